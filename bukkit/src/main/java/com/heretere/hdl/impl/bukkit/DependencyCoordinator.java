@@ -0,0 +1,219 @@
+package com.heretere.hdl.impl.bukkit;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+
+import org.bukkit.Bukkit;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.RegisteredServiceProvider;
+import org.bukkit.plugin.ServicePriority;
+
+import com.heretere.hdl.common.constants.DefaultRepository;
+import com.heretere.hdl.common.json.Repository;
+import com.heretere.hdl.common.json.ResolvedDependency;
+import com.heretere.hdl.impl.DependencyCache;
+import com.heretere.hdl.impl.DependencyDownloader;
+import com.heretere.hdl.impl.DownloadPriority;
+import com.heretere.hdl.impl.DownloadProgressListener;
+import com.heretere.hdl.impl.HDLPluginJar;
+import com.heretere.hdl.impl.source.ArtifactSources;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Lets every HDL plugin on the server download its dependencies at the same time instead of one {@code onLoad} after
+ * another.
+ * <p>
+ * Every plugin shades its own copy of HDL, so the shared state only consists of jdk types and is exchanged through
+ * the services manager. The first HDL plugin to load discovers the manifests of all HDL plugins and downloads every
+ * unique artifact once, largest first, into a folder shared by the whole server. Each plugin gets its own future that
+ * completes as soon as all of its jars are present and have been linked into its dependency folder, so every plugin
+ * only waits for its own set before running its regular load, which finds the jars already on disk.
+ */
+final class DependencyCoordinator {
+    private static final String MARKER = "com.heretere.hdl.coordinator";
+    private static final String DISCOVERY = "discovery";
+    private static final String PLUGIN_PREFIX = "plugin:";
+    private static final String DEPENDENCY_FOLDER = "dependencies";
+
+    private DependencyCoordinator() {
+        throw new IllegalStateException("Utility class.");
+    }
+
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static ConcurrentMap<String, Object> shared(@NonNull Plugin plugin) {
+        val services = Bukkit.getServicesManager();
+
+        for (RegisteredServiceProvider<ConcurrentMap> registration : services.getRegistrations(ConcurrentMap.class)) {
+            if (registration.getProvider().containsKey(MARKER)) {
+                return registration.getProvider();
+            }
+        }
+
+        val shared = new ConcurrentHashMap<String, Object>();
+        shared.put(MARKER, Boolean.TRUE);
+        services.register(ConcurrentMap.class, shared, plugin, ServicePriority.Lowest);
+
+        return shared;
+    }
+
+    /**
+     * Starts downloading the dependencies of every HDL plugin in the plugins folder, unless another HDL plugin
+     * already did. Requires jackson to be loaded by the calling plugin.
+     * <p>
+     * The combined set is downloaded by a single downloader into a staging folder shared by the whole server. Jars
+     * already present in any plugin's folder are linked instead of downloaded. As soon as all jars of a plugin are
+     * present they are linked or copied into its own folder and the plugin is released, while the downloads of the
+     * other plugins continue. The staging folder is never pruned by a plugin's load, so releasing a plugin early
+     * can't remove jars another plugin still waits for.
+     *
+     * @param plugin           the plugin that is currently loading
+     * @param progressListener receives the progress of the combined download
+     * @return a future that completes with the downloader once every plugin has been released, or null if another
+     *     plugin already started the download
+     */
+    static CompletableFuture<DependencyDownloader> prefetch(
+            @NonNull Plugin plugin,
+            DownloadProgressListener progressListener
+    ) {
+        val shared = shared(plugin);
+
+        if (shared.putIfAbsent(DISCOVERY, Boolean.TRUE) != null) {
+            return null;
+        }
+
+        val pluginsDirectory = plugin.getDataFolder().toPath().getParent();
+        final List<HDLPluginJar> plugins;
+
+        try {
+            plugins = HDLPluginJar.scan(pluginsDirectory);
+        } catch (IOException e) {
+            plugin.getLogger().log(Level.WARNING, "Failed to discover HDL plugins.", e);
+            return null;
+        }
+
+        val staging = pluginsDirectory.resolve(HDLPluginJar.SHARED_FOLDER).resolve(DEPENDENCY_FOLDER);
+        val combined = new LinkedHashMap<ResolvedDependency, Repository>();
+        val fileNames = new HashSet<String>();
+
+        for (val jar : plugins) {
+            dependencies(jar).forEach((dependency, repository) -> {
+                if (fileNames.add(dependency.getFileName())) {
+                    combined.put(dependency, repository);
+                }
+            });
+        }
+
+        val downloader = new DependencyDownloader(staging, HDLPluginJar.mirrorStatisticsFile(pluginsDirectory));
+        downloader.setProgressListener(progressListener);
+        // A broken manifest only fails its own plugin, which retries on its own and reports the error.
+        downloader.setFailFast(false);
+
+        plugins.stream()
+            .map(jar -> folder(pluginsDirectory, jar))
+            .filter(Files::isDirectory)
+            .forEach(folder -> downloader.addSource(ArtifactSources.seedDirectory(folder)));
+
+        plugin.getLogger()
+            .info("Downloading " + combined.size() + " Dependencies for " + plugins.size() + " HDL Plugins...");
+
+        val downloads = downloader.startDownloads(combined, DownloadPriority.CRITICAL);
+        val released = new ArrayList<CompletableFuture<Void>>();
+
+        for (val jar : plugins) {
+            val folder = folder(pluginsDirectory, jar);
+            val dependencies = dependencies(jar).keySet();
+
+            val future = CompletableFuture.allOf(
+                dependencies.stream()
+                    .map(dependency -> downloads.get(dependency.getFileName()))
+                    .toArray(CompletableFuture[]::new)
+            ).thenRun(() -> dependencies.forEach(dependency -> share(staging, folder, dependency)));
+
+            shared.put(PLUGIN_PREFIX + jar.getName(), future);
+            released.add(future);
+        }
+
+        return CompletableFuture.allOf(released.toArray(new CompletableFuture[0])).handle((result, error) -> {
+            downloader.saveMirrorStatistics();
+
+            try {
+                DependencyCache.pruneUnreferenced(staging, fileNames);
+            } catch (IOException ignored) {
+                // Stale jars are pruned on the next boot.
+            }
+
+            return downloader;
+        });
+    }
+
+    private static Path folder(@NonNull Path pluginsDirectory, @NonNull HDLPluginJar jar) {
+        return pluginsDirectory.resolve(jar.getName()).resolve(DEPENDENCY_FOLDER);
+    }
+
+    /**
+     * Waits until the dependencies of the plugin have been downloaded by
+     * {@link #prefetch(Plugin, DownloadProgressListener)}. Failures are ignored here, the plugin's own load retries
+     * and reports them.
+     *
+     * @param plugin the plugin that is currently loading
+     */
+    static void await(@NonNull Plugin plugin) {
+        val future = shared(plugin).get(PLUGIN_PREFIX + plugin.getName());
+
+        if (future instanceof CompletableFuture) {
+            try {
+                ((CompletableFuture<?>) future).join();
+            } catch (CompletionException | CancellationException ignored) {
+                // The plugin's own load falls back to downloading on its own.
+            }
+        }
+    }
+
+    private static Map<ResolvedDependency, Repository> dependencies(@NonNull HDLPluginJar jar) {
+        val dependencies = new LinkedHashMap<ResolvedDependency, Repository>();
+
+        DependencyDownloader.PRIVATE_DEPENDENCIES
+            .forEach(dependency -> dependencies.put(dependency, DefaultRepository.MAVEN_CENTRAL.getRepository()));
+        jar.getConfig()
+            .getDependencies()
+            .forEach(
+                dependency -> dependencies.put(
+                    dependency,
+                    jar.getConfig().getRepositories().get(dependency.getRepositoryId())
+                )
+            );
+        dependencies.keySet()
+            .removeIf(dependency -> jar.getEmbeddedDependencies().contains(dependency.getFileName()));
+
+        return dependencies;
+    }
+
+    private static void share(@NonNull Path owner, @NonNull Path folder, @NonNull ResolvedDependency dependency) {
+        val destination = folder.resolve(dependency.getFileName());
+
+        if (Files.exists(destination)) {
+            return;
+        }
+
+        try {
+            ArtifactSources.seedDirectory(owner)
+                .provide(dependency.getRelativeUrl(), dependency.getFileName(), destination);
+        } catch (IOException ignored) {
+            // The plugin's own load downloads anything that couldn't be shared.
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package com.heretere.hdl.impl.bukkit;
 
 import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 import org.bukkit.Bukkit;
@@ -8,27 +9,73 @@ import org.bukkit.plugin.java.JavaPlugin;
 
 import com.heretere.hdl.common.constants.DefaultRepository;
 import com.heretere.hdl.impl.DependencyLoader;
+import com.heretere.hdl.impl.DownloadProgressListener;
+import com.heretere.hdl.impl.HDLPluginJar;
 import com.heretere.hdl.impl.exception.DependencyLoadException;
 
 import lombok.val;
 
 public class DependencyPlugin extends JavaPlugin {
+    private static final int PROGRESS_STEP = 25;
+
     private final DependencyLoader dependencyLoader;
     private final Path dependencyFolder;
+    private final DownloadProgressListener progressListener;
 
     protected DependencyPlugin() {
         this.dependencyFolder = super.getDataFolder().toPath().resolve("dependencies");
         this.dependencyLoader = new DependencyLoader(
                 this.dependencyFolder,
-                super.getClassLoader()
+                super.getClassLoader(),
+                // Shared with every HDL plugin and the combined download, whichever plugin happens to load first.
+                HDLPluginJar.mirrorStatisticsFile(super.getDataFolder().toPath().getParent())
+        );
+        // The dependencies folder inside the data folder is only ever written by hdl.
+        this.dependencyLoader.setPruneUnreferenced(true);
+
+        this.progressListener = DownloadProgressListener.inSteps(
+            PROGRESS_STEP,
+            (percent, totalBytes) -> super.getLogger().info(
+                String.format("Downloading Dependencies... %d%% of %d KiB", percent, totalBytes / 1024)
+            )
         );
+        this.dependencyLoader.setProgressListener(this.progressListener);
     }
 
     @Override
     public final void onLoad() {
         super.getLogger().info("Loading Dependencies...");
+
+        if (this.dependencyLoader.loadPrivateDependencies()) {
+            val prefetch = DependencyCoordinator.prefetch(this, this.progressListener);
+
+            // Only the plugin that runs the combined download reports it, once the other plugins were released too.
+            if (prefetch != null) {
+                prefetch.thenAccept(downloader -> {
+                    if (downloader.getDownloadedBytes() > 0) {
+                        super.getLogger().info(
+                            "Downloaded " + downloader.getDownloadedBytes() / 1024 + " KiB for all HDL Plugins..."
+                        );
+                    }
+                });
+            }
+
+            DependencyCoordinator.await(this);
+        }
+
         if (this.dependencyLoader.loadDependencies()) {
+            val downloadedBytes = this.dependencyLoader.getDownloadedBytes();
+            val throttledNanos = this.dependencyLoader.getThrottledNanos();
+
             super.getLogger().info("Loaded " + this.dependencyLoader.getDependencyCount() + " Dependencies...");
+            if (downloadedBytes > 0) {
+                super.getLogger().info("Downloaded " + downloadedBytes / 1024 + " KiB...");
+            }
+            if (throttledNanos > 0) {
+                super.getLogger().info(
+                    "Throttled Downloads for " + TimeUnit.NANOSECONDS.toMillis(throttledNanos) + " ms..."
+                );
+            }
             this.load();
         } else {
             this.dependencyLoader.getErrors().forEach(error -> {
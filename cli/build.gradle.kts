@@ -0,0 +1,12 @@
+plugins {
+    application
+}
+
+dependencies {
+    implementation("com.fasterxml.jackson.core:jackson-databind:2.13.0")
+    implementation(project(":core"))
+}
+
+application {
+    mainClass.set("com.heretere.hdl.cli.PreWarm")
+}
@@ -0,0 +1,278 @@
+package com.heretere.hdl.cli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.heretere.hdl.common.constants.DefaultRepository;
+import com.heretere.hdl.common.json.Repository;
+import com.heretere.hdl.common.json.ResolvedDependency;
+import com.heretere.hdl.impl.DependencyCache;
+import com.heretere.hdl.impl.DependencyDownloader;
+import com.heretere.hdl.impl.DownloadProgressListener;
+import com.heretere.hdl.impl.HDLPluginJar;
+import com.heretere.hdl.impl.source.ArtifactSources;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+/**
+ * Populates the dependency folders of every HDL plugin in a plugins directory without starting a server.
+ * <p>
+ * Usage: {@code cli <plugins directory> [--store <directory> [--max-store-size <MiB>]]}, using the start script
+ * from {@code gradle :cli:installDist}.
+ * <p>
+ * Without {@code --store} every plugin's {@code <plugin name>/dependencies} folder is filled and jars the plugin
+ * doesn't reference anymore are pruned. Jars already present in any plugin's folder are reused instead of
+ * downloaded again. With {@code --store} all jars are downloaded into a single directory instead, which plugins can
+ * use through {@code -Dhdl.sources=<directory>}. {@code --max-store-size} evicts the least recently used jars that no
+ * scanned plugin needs once the store grows past the cap.
+ */
+@RequiredArgsConstructor
+public final class PreWarm {
+    private static final int PROGRESS_STEP = 10;
+    private static final String USAGE = "Usage: <plugins directory> [--store <directory> [--max-store-size <MiB>]]";
+
+    @NonNull
+    private final Path pluginsDirectory;
+    private final Path store;
+    private final long maxStoreBytes;
+
+    public static void main(String[] args) {
+        Path pluginsDirectory = null;
+        Path store = null;
+        long maxStoreBytes = -1;
+
+        for (int i = 0; i < args.length; i++) {
+            if ("--store".equals(args[i]) && i + 1 < args.length) {
+                store = Paths.get(args[++i]);
+            } else if ("--max-store-size".equals(args[i]) && i + 1 < args.length) {
+                maxStoreBytes = parseMebibytes(args[++i]);
+
+                if (maxStoreBytes < 0) {
+                    usage("--max-store-size must be a non-negative number of MiB.");
+                }
+            } else if (pluginsDirectory == null) {
+                pluginsDirectory = Paths.get(args[i]);
+            } else {
+                pluginsDirectory = null;
+                break;
+            }
+        }
+
+        if (pluginsDirectory == null) {
+            usage(null);
+        }
+
+        if (maxStoreBytes >= 0 && store == null) {
+            usage("--max-store-size requires --store.");
+        }
+
+        try {
+            System.exit(new PreWarm(pluginsDirectory, store, maxStoreBytes).run() ? 0 : 1);
+        } catch (IOException e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+    private static long parseMebibytes(@NonNull String value) {
+        try {
+            val mebibytes = Long.parseLong(value);
+            return mebibytes < 0 ? -1 : mebibytes * 1024 * 1024;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static void usage(String error) {
+        if (error != null) {
+            System.err.println(error);
+        }
+
+        System.err.println(USAGE);
+        System.exit(2);
+    }
+
+    public boolean run() throws IOException {
+        val plugins = HDLPluginJar.scan(this.pluginsDirectory);
+
+        if (plugins.isEmpty()) {
+            System.out.println("No HDL plugins found in " + this.pluginsDirectory);
+            return true;
+        }
+
+        val dependencies = new LinkedHashMap<String, Map.Entry<ResolvedDependency, Repository>>();
+        val targets = new LinkedHashMap<String, Set<Path>>();
+
+        for (val plugin : plugins) {
+            val target = this.store != null
+                ? this.store
+                : this.pluginsDirectory.resolve(plugin.getName()).resolve("dependencies");
+
+            val embedded = plugin.getEmbeddedDependencies();
+
+            DependencyDownloader.PRIVATE_DEPENDENCIES
+                .stream()
+                .filter(dependency -> !embedded.contains(dependency.getFileName()))
+                .forEach(
+                    dependency -> this.add(
+                        dependencies,
+                        targets,
+                        dependency,
+                        DefaultRepository.MAVEN_CENTRAL.getRepository(),
+                        target
+                    )
+                );
+
+            plugin.getConfig()
+                .getDependencies()
+                .stream()
+                .filter(dependency -> !embedded.contains(dependency.getFileName()))
+                .forEach(
+                    dependency -> this.add(
+                        dependencies,
+                        targets,
+                        dependency,
+                        plugin.getConfig().getRepositories().get(dependency.getRepositoryId()),
+                        target
+                    )
+                );
+        }
+
+        System.out.println(
+            "Found " + plugins.size() + " HDL plugins with " + dependencies.size() + " unique dependencies."
+        );
+
+        val staging = this.store != null ? this.store : Files.createTempDirectory("hdl-prewarm");
+
+        try {
+            val downloads = new LinkedHashMap<ResolvedDependency, Repository>();
+            dependencies.values().forEach(entry -> downloads.put(entry.getKey(), entry.getValue()));
+
+            // Shares the statistics the plugins use on the server, the staging folder may be temporary.
+            val downloader = new DependencyDownloader(
+                staging,
+                HDLPluginJar.mirrorStatisticsFile(this.pluginsDirectory)
+            );
+
+            if (this.store == null) {
+                // Jars an earlier run already placed in a plugin folder don't have to be downloaded again.
+                targets.values()
+                    .stream()
+                    .flatMap(Set::stream)
+                    .distinct()
+                    .filter(Files::isDirectory)
+                    .forEach(target -> downloader.addSource(ArtifactSources.seedDirectory(target)));
+            }
+
+            downloader.setProgressListener(
+                DownloadProgressListener.inSteps(
+                    PROGRESS_STEP,
+                    (percent, totalBytes) -> System.out.printf(
+                        "Downloading... %d%% of %d KiB%n",
+                        percent,
+                        totalBytes / 1024
+                    )
+                )
+            );
+
+            val success = downloader.downloadDependencies(downloads);
+            downloader.saveMirrorStatistics();
+
+            downloader.getErrors().forEach(error -> System.err.println("Failed: " + error.getMessage()));
+
+            if (this.store == null) {
+                this.distribute(staging, dependencies, targets);
+
+                if (success) {
+                    this.prune(targets);
+                }
+            } else if (this.maxStoreBytes >= 0) {
+                dependencies.keySet().forEach(fileName -> DependencyCache.touch(this.store.resolve(fileName)));
+                val freed = DependencyCache.evictLeastRecentlyUsed(
+                    this.store,
+                    this.maxStoreBytes,
+                    dependencies.keySet()
+                );
+                System.out.println("Evicted " + freed / 1024 + " KiB from " + this.store + ".");
+            }
+
+            System.out.println(
+                "Downloaded " + downloader.getDownloadedBytes() / 1024 + " KiB"
+                    + (this.store != null ? " into " + this.store : "") + "."
+            );
+
+            return success;
+        } finally {
+            if (this.store == null) {
+                this.delete(staging);
+            }
+        }
+    }
+
+    private void add(
+            @NonNull Map<String, Map.Entry<ResolvedDependency, Repository>> dependencies,
+            @NonNull Map<String, Set<Path>> targets,
+            @NonNull ResolvedDependency dependency,
+            Repository repository,
+            @NonNull Path target
+    ) {
+        dependencies.putIfAbsent(
+            dependency.getFileName(),
+            new AbstractMap.SimpleImmutableEntry<>(dependency, repository)
+        );
+        targets.computeIfAbsent(dependency.getFileName(), fileName -> new LinkedHashSet<>()).add(target);
+    }
+
+    private void distribute(
+            @NonNull Path staging,
+            @NonNull Map<String, Map.Entry<ResolvedDependency, Repository>> dependencies,
+            @NonNull Map<String, Set<Path>> targets
+    ) throws IOException {
+        val seed = ArtifactSources.seedDirectory(staging);
+
+        for (val entry : targets.entrySet()) {
+            val dependency = dependencies.get(entry.getKey()).getKey();
+
+            for (val target : entry.getValue()) {
+                val destination = target.resolve(entry.getKey());
+
+                if (!Files.exists(destination)) {
+                    seed.provide(dependency.getRelativeUrl(), dependency.getFileName(), destination);
+                }
+            }
+        }
+    }
+
+    private void prune(@NonNull Map<String, Set<Path>> targets) throws IOException {
+        val referenced = new LinkedHashMap<Path, Set<String>>();
+        targets.forEach(
+            (fileName, directories) -> directories.forEach(
+                directory -> referenced.computeIfAbsent(directory, key -> new LinkedHashSet<>()).add(fileName)
+            )
+        );
+
+        for (val entry : referenced.entrySet()) {
+            DependencyCache.pruneUnreferenced(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private void delete(@NonNull Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (val file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+}
@@ -15,4 +15,5 @@ public class ResolvedDependency {
     private String relativeUrl;
     private String repositoryId;
     private String fileName;
+    private long size;
 }
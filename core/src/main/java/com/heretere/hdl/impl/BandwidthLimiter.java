@@ -0,0 +1,69 @@
+package com.heretere.hdl.impl;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import lombok.val;
+
+/**
+ * A token bucket shared by every download thread of every {@link DependencyDownloader} in this copy of HDL, see
+ * {@link DependencyDownloader#setBackgroundBandwidth(long)}.
+ * <p>
+ * The bucket holds at most a tenth of a second worth of bytes, so bursts stay short. Threads take the bytes they
+ * just read even if the bucket runs into debt and then sleep until the debt is paid off, which keeps the combined
+ * rate of all threads at the limit without any thread waiting on another.
+ */
+final class BandwidthLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final int BURST_FRACTION = 10;
+
+    private final long bytesPerSecond;
+    private final double capacity;
+    private double tokens;
+    private long lastRefill;
+
+    BandwidthLimiter(long bytesPerSecond, int minimumBurst) {
+        if (bytesPerSecond <= 0) {
+            throw new IllegalArgumentException("Bandwidth must be positive.");
+        }
+
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = Math.max(minimumBurst, bytesPerSecond / BURST_FRACTION);
+        this.tokens = this.capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes the bytes out of the bucket and sleeps until the bucket is out of debt again.
+     *
+     * @param bytes the amount of bytes that were just transferred
+     * @return the nanoseconds spent sleeping
+     * @throws InterruptedIOException if the thread was interrupted while sleeping
+     */
+    long acquire(int bytes) throws InterruptedIOException {
+        final long wait;
+
+        synchronized (this) {
+            val now = System.nanoTime();
+            this.tokens = Math.min(
+                this.capacity,
+                this.tokens + (double) (now - this.lastRefill) * this.bytesPerSecond / NANOS_PER_SECOND
+            );
+            this.lastRefill = now;
+            this.tokens -= bytes;
+
+            wait = this.tokens >= 0 ? 0 : (long) (-this.tokens * NANOS_PER_SECOND / this.bytesPerSecond);
+        }
+
+        if (wait > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while throttling.");
+            }
+        }
+
+        return wait;
+    }
+}
@@ -0,0 +1,142 @@
+package com.heretere.hdl.impl;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Housekeeping for dependency folders and shared artifact stores. Only {@code .jar} files are ever deleted.
+ */
+public final class DependencyCache {
+    private static final String JAR_EXTENSION = ".jar";
+
+    private DependencyCache() {
+        throw new IllegalStateException("Utility class.");
+    }
+
+    /**
+     * Deletes every jar directly inside the directory that isn't referenced anymore, e.g. jars left behind by a
+     * version bump.
+     *
+     * @param directory  the dependency folder
+     * @param referenced the file names referenced by the current manifest
+     * @return the amount of bytes freed
+     * @throws IOException if the directory couldn't be listed
+     */
+    public static long pruneUnreferenced(@NonNull Path directory, @NonNull Set<String> referenced) throws IOException {
+        long freed = 0;
+
+        for (val jar : jars(directory)) {
+            if (!referenced.contains(jar.getFileName().toString())) {
+                freed += delete(jar);
+            }
+        }
+
+        return freed;
+    }
+
+    /**
+     * Deletes the least recently used jars anywhere below the directory until it fits into the size cap.
+     * Jars whose file name is in use are never deleted, even if that means the cap can't be met.
+     *
+     * @param directory the shared store
+     * @param maxBytes  the size cap in bytes
+     * @param inUse     the file names that must be kept
+     * @return the amount of bytes freed
+     * @throws IOException if the directory couldn't be walked
+     */
+    public static long evictLeastRecentlyUsed(
+            @NonNull Path directory,
+            long maxBytes,
+            @NonNull Set<String> inUse
+    ) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+
+        final List<Path> candidates;
+        long size = 0;
+
+        try (Stream<Path> files = Files.walk(directory)) {
+            candidates = files
+                .filter(Files::isRegularFile)
+                .filter(file -> file.getFileName().toString().endsWith(JAR_EXTENSION))
+                .collect(Collectors.toList());
+        }
+
+        for (val candidate : candidates) {
+            size += Files.size(candidate);
+        }
+
+        candidates.sort(Comparator.comparing(DependencyCache::lastUsed));
+
+        long freed = 0;
+
+        for (val candidate : candidates) {
+            if (size - freed <= maxBytes) {
+                break;
+            }
+
+            if (!inUse.contains(candidate.getFileName().toString())) {
+                freed += delete(candidate);
+            }
+        }
+
+        return freed;
+    }
+
+    /**
+     * Marks an artifact as used so {@link #evictLeastRecentlyUsed(Path, long, Set)} keeps it the longest.
+     * The modification time is used since access times are commonly disabled on servers.
+     *
+     * @param file the artifact
+     */
+    public static void touch(@NonNull Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            // Read only stores simply fall back to their existing order.
+        }
+    }
+
+    private static List<Path> jars(@NonNull Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                .filter(Files::isRegularFile)
+                .filter(file -> file.getFileName().toString().endsWith(JAR_EXTENSION))
+                .collect(Collectors.toList());
+        }
+    }
+
+    private static FileTime lastUsed(@NonNull Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static long delete(@NonNull Path file) {
+        try {
+            val size = Files.size(file);
+            return Files.deleteIfExists(file) ? size : 0;
+        } catch (IOException e) {
+            // Jars locked by another process are left for the next run.
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,519 @@
+package com.heretere.hdl.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.heretere.hdl.common.constants.DefaultRepository;
+import com.heretere.hdl.common.json.HDLConfig;
+import com.heretere.hdl.common.json.Repository;
+import com.heretere.hdl.common.json.ResolvedDependency;
+import com.heretere.hdl.impl.exception.DependencyLoadException;
+import com.heretere.hdl.impl.source.ArtifactSource;
+import com.heretere.hdl.impl.source.ArtifactSources;
+
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+import lombok.val;
+
+/**
+ * Downloads dependencies into a folder without touching any classloader. {@link DependencyLoader} builds on top of
+ * this to inject the downloaded jars, tools that only need the files on disk can use it directly.
+ */
+public class DependencyDownloader {
+    /**
+     * The dependencies HDL itself needs at runtime to read the manifest.
+     */
+    public static final List<ResolvedDependency> PRIVATE_DEPENDENCIES = Collections.unmodifiableList(
+        Arrays.asList(
+            privateDependency("com/fasterxml/jackson/core/jackson-databind/2.13.0/", "jackson-databind-2.13.0.jar"),
+            privateDependency("com/fasterxml/jackson/core/jackson-core/2.13.0/", "jackson-core-2.13.0.jar"),
+            privateDependency(
+                "com/fasterxml/jackson/core/jackson-annotations/2.13.0/",
+                "jackson-annotations-2.13.0.jar"
+            )
+        )
+    );
+
+    /**
+     * The bandwidth in KiB/s {@link DownloadPriority#BACKGROUND} downloads are throttled to. Throttling is disabled
+     * unless the property is set to a positive value.
+     */
+    public static final String BACKGROUND_BANDWIDTH_PROPERTY = "hdl.backgroundBandwidth";
+
+    private static final String MIRROR_STATISTICS_FILE = ".mirror_statistics.properties";
+    private static final int DOWNLOAD_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private static final int BUFFER_SIZE = 8192;
+    /**
+     * A mirror that stops responding is treated like a failed mirror instead of stalling the load.
+     */
+    private static final int CONNECT_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(10);
+    private static final int READ_TIMEOUT_MILLIS = (int) TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * One bucket for every downloader, so concurrent background downloads share the bandwidth instead of each
+     * getting the full rate.
+     */
+    private static volatile BandwidthLimiter backgroundLimiter = limiter(
+        Long.getLong(BACKGROUND_BANDWIDTH_PROPERTY, 0) * 1024
+    );
+
+    @Getter
+    private final Path basePath;
+    private final MirrorStatistics mirrorStatistics;
+    private final List<ArtifactSource> sources;
+    @Getter
+    private final Set<Throwable> errors;
+    private final AtomicInteger dependencyCount = new AtomicInteger(0);
+    private final AtomicLong downloadedBytes = new AtomicLong(0);
+    private final AtomicLong totalBytes = new AtomicLong(0);
+    private final AtomicLong throttledNanos = new AtomicLong(0);
+    @Setter
+    private DownloadProgressListener progressListener;
+    /**
+     * The priority of {@link #downloadDependencies(Map)}. The private dependencies are always critical.
+     */
+    @Setter
+    private DownloadPriority priority = DownloadPriority.CRITICAL;
+    /**
+     * Whether a failed dependency stops every network download that hasn't started yet. A single plugin can't load
+     * with a missing jar anyway, while a downloader shared by several plugins should keep going for the others.
+     */
+    @Setter
+    private boolean failFast = true;
+
+    public DependencyDownloader(@NonNull Path basePath) {
+        this(basePath, basePath.resolve(MIRROR_STATISTICS_FILE));
+    }
+
+    /**
+     * @param basePath             the folder the dependencies are downloaded into
+     * @param mirrorStatisticsFile the mirror statistics file, which can be shared with other downloaders
+     */
+    public DependencyDownloader(@NonNull Path basePath, @NonNull Path mirrorStatisticsFile) {
+        this.basePath = basePath;
+        this.mirrorStatistics = MirrorStatistics.load(mirrorStatisticsFile);
+        this.sources = new CopyOnWriteArrayList<>(ArtifactSources.fromSystemProperty());
+        this.errors = ConcurrentHashMap.newKeySet();
+    }
+
+    private static BandwidthLimiter limiter(long bytesPerSecond) {
+        return bytesPerSecond > 0 ? new BandwidthLimiter(bytesPerSecond, BUFFER_SIZE) : null;
+    }
+
+    private static ResolvedDependency privateDependency(@NonNull String directory, @NonNull String fileName) {
+        return ResolvedDependency.builder()
+            .relativeUrl(directory + fileName)
+            .repositoryId(DefaultRepository.MAVEN_CENTRAL.getId())
+            .fileName(fileName)
+            .build();
+    }
+
+    /**
+     * Adds a local source to the end of the source chain. Sources are tried in order before any network mirror.
+     * The chain starts out with the sources configured through {@link ArtifactSources#SYSTEM_PROPERTY}.
+     *
+     * @param source the source to add
+     */
+    public void addSource(@NonNull ArtifactSource source) {
+        this.sources.add(source);
+    }
+
+    /**
+     * Sets the bandwidth {@link DownloadPriority#BACKGROUND} downloads of every downloader share. Defaults to the
+     * {@value #BACKGROUND_BANDWIDTH_PROPERTY} system property, throttling is disabled if that isn't set.
+     *
+     * @param bytesPerSecond the bandwidth in bytes per second, 0 or less disables throttling
+     */
+    public static void setBackgroundBandwidth(long bytesPerSecond) {
+        backgroundLimiter = limiter(bytesPerSecond);
+    }
+
+    /**
+     * Downloads {@link #PRIVATE_DEPENDENCIES} from maven central.
+     *
+     * @return true if no errors occurred
+     */
+    public boolean downloadPrivateDependencies() {
+        PRIVATE_DEPENDENCIES
+            .parallelStream()
+            .forEach(
+                dependency -> this.downloadDependencySafely(
+                    dependency,
+                    DefaultRepository.MAVEN_CENTRAL.getRepository(),
+                    null
+                )
+            );
+
+        return this.errors.isEmpty();
+    }
+
+    /**
+     * Downloads every dependency in the manifest.
+     *
+     * @param config the manifest
+     * @return true if no errors occurred
+     */
+    public boolean downloadDependencies(@NonNull HDLConfig config) {
+        val dependencies = new LinkedHashMap<ResolvedDependency, Repository>();
+        config.getDependencies()
+            .forEach(
+                dependency -> dependencies.put(
+                    dependency,
+                    config.getRepositories().get(dependency.getRepositoryId())
+                )
+            );
+
+        return this.downloadDependencies(dependencies);
+    }
+
+    /**
+     * Downloads the given dependencies with the downloader's priority.
+     *
+     * @param dependencies the dependencies mapped to the repository they were resolved from
+     * @return true if no errors occurred
+     */
+    public boolean downloadDependencies(@NonNull Map<ResolvedDependency, Repository> dependencies) {
+        return this.downloadDependencies(dependencies, this.priority);
+    }
+
+    /**
+     * Downloads the given dependencies on a worker pool, largest first.
+     *
+     * @param dependencies the dependencies mapped to the repository they were resolved from
+     * @param priority     whether the downloads are throttled to the background bandwidth
+     * @return true if no errors occurred
+     */
+    public boolean downloadDependencies(
+            @NonNull Map<ResolvedDependency, Repository> dependencies,
+            @NonNull DownloadPriority priority
+    ) {
+        CompletableFuture.allOf(
+            this.startDownloads(dependencies, priority).values().toArray(new CompletableFuture[0])
+        ).join();
+
+        return this.errors.isEmpty();
+    }
+
+    /**
+     * Starts downloading the given dependencies on a worker pool, largest first, without waiting for them.
+     * <p>
+     * Every future completes normally once its dependency is either on disk or recorded in {@link #getErrors()}.
+     *
+     * @param dependencies the dependencies mapped to the repository they were resolved from
+     * @param priority     whether the downloads are throttled to the background bandwidth
+     * @return a future per dependency file name
+     */
+    public Map<String, CompletableFuture<Void>> startDownloads(
+            @NonNull Map<ResolvedDependency, Repository> dependencies,
+            @NonNull DownloadPriority priority
+    ) {
+        val missing = dependencies.keySet()
+            .stream()
+            .filter(dependency -> !Files.exists(this.basePath.resolve(dependency.getFileName())))
+            .mapToLong(ResolvedDependency::getSize)
+            .toArray();
+
+        this.downloadedBytes.set(0);
+        this.totalBytes.set(Arrays.stream(missing).sum());
+
+        val futures = new LinkedHashMap<String, CompletableFuture<Void>>();
+
+        if (missing.length == 0) {
+            this.dependencyCount.addAndGet(dependencies.size());
+            dependencies.keySet()
+                .forEach(dependency -> futures.put(dependency.getFileName(), CompletableFuture.completedFuture(null)));
+            return futures;
+        }
+
+        val limiter = priority == DownloadPriority.BACKGROUND ? backgroundLimiter : null;
+        val executor = Executors.newFixedThreadPool(
+            Math.min(DOWNLOAD_THREADS, missing.length),
+            runnable -> {
+                val thread = new Thread(runnable, "hdl-download");
+                thread.setDaemon(true);
+                return thread;
+            }
+        );
+
+        // The pool takes tasks in submission order, so the largest jars start first and don't stretch the tail.
+        dependencies.entrySet()
+            .stream()
+            .sorted(
+                Comparator.comparingLong(
+                    (Map.Entry<ResolvedDependency, Repository> entry) -> entry.getKey().getSize()
+                ).reversed()
+            )
+            .forEach(
+                entry -> futures.put(
+                    entry.getKey().getFileName(),
+                    CompletableFuture.runAsync(
+                        () -> this.downloadDependencySafely(entry.getKey(), entry.getValue(), limiter),
+                        executor
+                    )
+                )
+            );
+
+        // Already submitted downloads still run, the threads exit once the queue is drained.
+        executor.shutdown();
+
+        return futures;
+    }
+
+    private void downloadDependencySafely(
+            @NonNull ResolvedDependency dependency,
+            Repository repository,
+            BandwidthLimiter limiter
+    ) {
+        try {
+            this.downloadDependency(dependency, repository, limiter);
+        } catch (DependencyLoadException e) {
+            this.errors.add(e);
+        } catch (Exception e) {
+            this.errors.add(
+                new DependencyLoadException(
+                        dependency,
+                        repository,
+                        "Failed to load dependency " + dependency
+                )
+            );
+        }
+    }
+
+    private void downloadDependency(
+            @NonNull ResolvedDependency dependency,
+            Repository repository,
+            BandwidthLimiter limiter
+    ) {
+        val defaultRepository = DefaultRepository.fromId(dependency.getRepositoryId());
+
+        final List<String> urls;
+
+        if (defaultRepository == null) {
+            urls = repository.getUrls();
+        } else if (defaultRepository == DefaultRepository.MAVEN_LOCAL) {
+            urls = Collections.singletonList(ArtifactSources.mavenLocalRoot().toUri().toString());
+        } else {
+            urls = defaultRepository.getRepository().getUrls();
+        }
+
+        if (!this.downloadFromMirrors(urls, dependency.getRelativeUrl(), dependency.getFileName(), limiter)) {
+            throw new DependencyLoadException(
+                    dependency,
+                    repository,
+                    "Failed to load dependency " + dependency
+            );
+        }
+    }
+
+    private boolean downloadFromMirrors(
+            @NonNull List<String> urls,
+            @NonNull String relativeUrl,
+            @NonNull String fileName,
+            BandwidthLimiter limiter
+    ) {
+        val saveLocation = this.basePath.resolve(fileName);
+
+        val found = Files.exists(saveLocation)
+            || this.sources
+                .stream()
+                .anyMatch(source -> this.provideFromSource(source, relativeUrl, fileName, saveLocation))
+            || this.mirrorStatistics.order(urls)
+                .stream()
+                .anyMatch(
+                    url -> url.startsWith("file:")
+                        ? this.provideFromFileRepository(url, relativeUrl, fileName, saveLocation)
+                        : this.downloadDependencyFromURLString(url, relativeUrl, fileName, limiter)
+                );
+
+        if (found) {
+            this.dependencyCount.addAndGet(1);
+        }
+
+        return found;
+    }
+
+    private boolean provideFromFileRepository(
+            @NonNull String repoUrl,
+            @NonNull String relativeUrl,
+            @NonNull String fileName,
+            @NonNull Path saveLocation
+    ) {
+        try {
+            return this.provideFromSource(
+                ArtifactSources.mavenLayout(URI.create(repoUrl)),
+                relativeUrl,
+                fileName,
+                saveLocation
+            );
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private boolean provideFromSource(
+            @NonNull ArtifactSource source,
+            @NonNull String relativeUrl,
+            @NonNull String fileName,
+            @NonNull Path saveLocation
+    ) {
+        try {
+            return source.provide(relativeUrl, fileName, saveLocation);
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(saveLocation);
+            } catch (IOException ignored) {
+                // The next source will overwrite the partial file if it still exists.
+            }
+
+            return false;
+        }
+    }
+
+    private boolean downloadDependencyFromURLString(
+            @NonNull String repoUrl,
+            @NonNull String relativeUrl,
+            @NonNull String fileName,
+            BandwidthLimiter limiter
+    ) {
+        if (this.failFast && !this.errors.isEmpty()) {
+            return false;
+        }
+
+        val saveLocation = this.basePath.resolve(fileName);
+
+        if (!Files.exists(saveLocation)) {
+            try {
+                val start = System.nanoTime();
+                val connection = (HttpURLConnection) new URL(repoUrl + relativeUrl).openConnection();
+                connection.setConnectTimeout(CONNECT_TIMEOUT_MILLIS);
+                connection.setReadTimeout(READ_TIMEOUT_MILLIS);
+
+                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                    connection.disconnect();
+                    this.mirrorStatistics.recordFailure(repoUrl);
+                    return false;
+                }
+
+                val firstByte = System.nanoTime();
+
+                Files.createDirectories(this.basePath);
+
+                final long throttled;
+                try (InputStream input = connection.getInputStream()) {
+                    throttled = this.transfer(input, saveLocation, limiter);
+                }
+
+                // Time spent throttled says nothing about the mirror.
+                this.mirrorStatistics.recordSuccess(
+                    repoUrl,
+                    firstByte - start,
+                    Files.size(saveLocation),
+                    System.nanoTime() - firstByte - throttled
+                );
+            } catch (Exception e) {
+                this.mirrorStatistics.recordFailure(repoUrl);
+
+                try {
+                    Files.deleteIfExists(saveLocation);
+                } catch (IOException ignored) {
+                    // The next mirror will overwrite the partial file if it still exists.
+                }
+
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the nanoseconds spent throttled
+     */
+    private long transfer(
+            @NonNull InputStream input,
+            @NonNull Path saveLocation,
+            BandwidthLimiter limiter
+    ) throws IOException {
+        val buffer = new byte[BUFFER_SIZE];
+        long throttled = 0;
+
+        try (OutputStream output = Files.newOutputStream(saveLocation)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+
+                val downloaded = this.downloadedBytes.addAndGet(read);
+                val listener = this.progressListener;
+                if (listener != null && this.totalBytes.get() > 0) {
+                    listener.onProgress(downloaded, this.totalBytes.get());
+                }
+
+                if (limiter != null) {
+                    val slept = limiter.acquire(read);
+                    throttled += slept;
+                    this.throttledNanos.addAndGet(slept);
+                }
+            }
+        }
+
+        return throttled;
+    }
+
+    /**
+     * Writes the mirror statistics gathered so far back to disk.
+     */
+    public void saveMirrorStatistics() {
+        try {
+            this.mirrorStatistics.save();
+        } catch (IOException ignored) {
+            // Mirror statistics are only an optimization for the next cold start.
+        }
+    }
+
+    public int getDependencyCount() {
+        return this.dependencyCount.get();
+    }
+
+    /**
+     * @return the amount of bytes downloaded for the dependencies in the manifest
+     */
+    public long getDownloadedBytes() {
+        return this.downloadedBytes.get();
+    }
+
+    /**
+     * @return the amount of bytes the missing dependencies in the manifest add up to
+     */
+    public long getTotalBytes() {
+        return this.totalBytes.get();
+    }
+
+    /**
+     * @return the nanoseconds download threads spent sleeping to stay within the background bandwidth, summed over
+     *     all threads
+     */
+    public long getThrottledNanos() {
+        return this.throttledNanos.get();
+    }
+}
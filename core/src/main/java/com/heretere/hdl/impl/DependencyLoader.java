@@ -1,65 +1,81 @@
 package com.heretere.hdl.impl;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.AbstractMap;
-import java.util.HashSet;
-import java.util.List;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import com.heretere.hdl.common.constants.DefaultRepository;
 import com.heretere.hdl.common.json.HDLConfig;
 import com.heretere.hdl.common.json.Repository;
 import com.heretere.hdl.common.json.ResolvedDependency;
 import com.heretere.hdl.impl.exception.DependencyLoadException;
+import com.heretere.hdl.impl.source.ArtifactSource;
+import com.heretere.hdl.impl.source.ArtifactSources;
+import com.heretere.hdl.impl.zip.EmbeddedArchive;
 
-import lombok.Getter;
 import lombok.NonNull;
+import lombok.Setter;
 import lombok.val;
 
 public class DependencyLoader {
-    private static final String CENTRAL_URL = DefaultRepository.MAVEN_CENTRAL.getRepository().getUrls().get(0);
-    private static final Set<AbstractMap.SimpleImmutableEntry<String, String>> privateDependencies = new HashSet<>();
-
-    static {
-        privateDependencies.add(
-            new AbstractMap.SimpleImmutableEntry<>(
-                    "com/fasterxml/jackson/core/jackson-databind/2.13.0/jackson-databind-2.13.0.jar",
-                    "jackson-databind-2.13.0.jar"
-            )
-        );
-        privateDependencies.add(
-            new AbstractMap.SimpleImmutableEntry<>(
-                    "com/fasterxml/jackson/core/jackson-core/2.13.0/jackson-core-2.13.0.jar",
-                    "jackson-core-2.13.0.jar"
-            )
-        );
-        privateDependencies.add(
-            new AbstractMap.SimpleImmutableEntry<>(
-                    "com/fasterxml/jackson/core/jackson-annotations/2.13.0/jackson-annotations-2.13.0.jar",
-                    "jackson-annotations-2.13.0.jar"
-            )
-        );
-    }
+    public static final String REPACK_PROPERTY = "hdl.repackStored";
 
     private final ClassLoader classLoader;
     private final URLClassLoaderAccess classLoaderAccess;
     private final Path basePath;
-    @Getter
-    private final Set<Throwable> errors;
-    private final AtomicInteger dependencyCount = new AtomicInteger(0);
+    private final DependencyDownloader downloader;
+    /**
+     * Whether jars in the dependency folder that the manifest doesn't reference anymore are deleted after a
+     * successful load. This deletes every unreferenced jar in the folder, so only enable it if the folder is used by
+     * hdl alone.
+     */
+    @Setter
+    private boolean pruneUnreferenced;
+    /**
+     * Whether dependencies are repacked with uncompressed entries before they're injected, trading disk space for
+     * less class loading cpu. Defaults to the {@value #REPACK_PROPERTY} system property.
+     */
+    @Setter
+    private boolean repackStored = Boolean.getBoolean(REPACK_PROPERTY);
+    private boolean privateDependenciesLoaded;
+    /**
+     * The dependencies embedded in the plugin jar, null if the plugin wasn't packaged in embedded mode.
+     */
+    private EmbeddedArchive embeddedArchive;
 
     public DependencyLoader(@NonNull Path basePath) {
         this(basePath, DependencyLoader.class.getClassLoader());
     }
 
     public DependencyLoader(@NonNull Path basePath, @NonNull ClassLoader classLoader) {
+        this(basePath, classLoader, new DependencyDownloader(basePath));
+    }
+
+    /**
+     * @param basePath             the folder the dependencies are downloaded into
+     * @param classLoader          the classloader the dependencies are injected into
+     * @param mirrorStatisticsFile the mirror statistics file, which can be shared with other loaders
+     */
+    public DependencyLoader(
+            @NonNull Path basePath,
+            @NonNull ClassLoader classLoader,
+            @NonNull Path mirrorStatisticsFile
+    ) {
+        this(basePath, classLoader, new DependencyDownloader(basePath, mirrorStatisticsFile));
+    }
+
+    private DependencyLoader(
+            @NonNull Path basePath,
+            @NonNull ClassLoader classLoader,
+            @NonNull DependencyDownloader downloader
+    ) {
         this.basePath = basePath;
 
         if (!(classLoader instanceof URLClassLoader)) {
@@ -68,14 +84,38 @@ public class DependencyLoader {
 
         this.classLoader = classLoader;
         this.classLoaderAccess = URLClassLoaderAccess.create((URLClassLoader) classLoader);
-        this.errors = new HashSet<>();
+        this.downloader = downloader;
+    }
+
+    /**
+     * Adds a local source to the end of the source chain. Sources are tried in order before any network mirror.
+     * The chain starts out with the sources configured through {@link ArtifactSources#SYSTEM_PROPERTY}.
+     *
+     * @param source the source to add
+     */
+    public void addSource(@NonNull ArtifactSource source) {
+        this.downloader.addSource(source);
+    }
+
+    public void setProgressListener(DownloadProgressListener progressListener) {
+        this.downloader.setProgressListener(progressListener);
+    }
+
+    /**
+     * Sets the priority of the dependencies in the manifest. Use {@link DownloadPriority#BACKGROUND} only when the load
+     * runs off the main thread and nothing blocks on it. HDL's own dependencies are always downloaded at full speed.
+     *
+     * @param priority the priority
+     */
+    public void setPriority(@NonNull DownloadPriority priority) {
+        this.downloader.setPriority(priority);
     }
 
     public boolean loadDependencies() {
         try {
             this.loadPrivateDependencies();
         } catch (Exception e) {
-            this.errors.add(
+            this.getErrors().add(
                 new DependencyLoadException(
                         null,
                         null,
@@ -86,152 +126,189 @@ public class DependencyLoader {
         }
 
         HDLConfig config = null;
-        if (this.errors.isEmpty()) {
+        if (this.getErrors().isEmpty()) {
             try {
                 config = new com.fasterxml.jackson.databind.ObjectMapper().readValue(
                     this.classLoader.getResourceAsStream("hdl_dependencies.json"),
                     HDLConfig.class
                 );
             } catch (IOException e) {
-                this.errors.add(e);
+                this.getErrors().add(e);
             }
         }
 
         val finalConfig = config;
 
-        if (this.errors.isEmpty() && finalConfig != null) {
-            finalConfig
+        if (this.getErrors().isEmpty() && finalConfig != null) {
+            this.downloader.downloadDependencies(this.withoutEmbedded(finalConfig));
+
+            val repacker = this.repackStored ? new StoredJarRepacker(this.basePath) : null;
+            val urls = finalConfig
                 .getDependencies()
                 .parallelStream()
-                .forEach(
-                    dependency -> {
-                        try {
-                            this.downloadDependency(
-                                dependency,
-                                finalConfig.getRepositories().get(dependency.getRepositoryId())
-                            );
-                        } catch (DependencyLoadException e) {
-                            this.errors.add(e);
-                        } catch (Exception e) {
-                            this.errors.add(
-                                new DependencyLoadException(
-                                        dependency,
-                                        finalConfig.getRepositories()
-                                            .get(dependency.getRepositoryId()),
-                                        "Failed to load dependency " + dependency
-                                )
-                            );
-                        }
-                    }
-                );
+                .map(dependency -> this.locate(repacker, dependency))
+                .collect(Collectors.toList());
 
-            finalConfig
-                .getDependencies()
-                .forEach(dependency -> this.loadDependency(dependency.getFileName()));
-        }
+            urls.stream().filter(Objects::nonNull).forEach(this.classLoaderAccess::addURL);
 
-        return this.errors.isEmpty();
-    }
+            if (this.pruneUnreferenced && this.getErrors().isEmpty()) {
+                this.pruneUnreferenced(finalConfig, repacker);
+            }
 
-    private void downloadDependency(
-            @NonNull ResolvedDependency dependency,
-            @NonNull Repository repository
-    ) {
-        val defaultRepository = DefaultRepository.fromId(dependency.getRepositoryId());
+            if (repacker != null) {
+                try {
+                    repacker.save();
+                } catch (IOException ignored) {
+                    // The originals are hashed again on the next start.
+                }
+            }
+        }
 
-        final List<String> urls;
+        this.downloader.saveMirrorStatistics();
 
-        if (defaultRepository == null) {
-            urls = repository.getUrls();
-        } else {
-            urls = defaultRepository.getRepository().getUrls();
-        }
+        return this.getErrors().isEmpty();
+    }
 
-        if (
-            urls
-                .stream()
-                .filter(
-                    url -> this.downloadDependencyFromURLString(
-                        url,
-                        dependency.getRelativeUrl(),
-                        dependency.getFileName()
-                    )
-                )
-                .findFirst()
-                .orElse(null) == null
-        ) {
-            throw new DependencyLoadException(
+    private Map<ResolvedDependency, Repository> withoutEmbedded(@NonNull HDLConfig config) {
+        val dependencies = new LinkedHashMap<ResolvedDependency, Repository>();
+        config.getDependencies()
+            .stream()
+            .filter(dependency -> !this.isEmbedded(dependency))
+            .forEach(
+                dependency -> dependencies.put(
                     dependency,
-                    repository,
-                    "Failed to load dependency " + dependency
+                    config.getRepositories().get(dependency.getRepositoryId())
+                )
             );
-        }
+
+        return dependencies;
     }
 
-    private boolean downloadDependencyFromURLString(
-            @NonNull String repoUrl,
-            @NonNull String relativeUrl,
-            @NonNull String fileName
-    ) {
-        if (!this.errors.isEmpty()) {
-            return false;
+    private boolean isEmbedded(@NonNull ResolvedDependency dependency) {
+        return this.embeddedArchive != null && this.embeddedArchive.contains(dependency.getFileName());
+    }
+
+    /**
+     * Returns the url the dependency is loaded from, either straight from the plugin jar or from the dependency
+     * folder.
+     */
+    private URL locate(StoredJarRepacker repacker, @NonNull ResolvedDependency dependency) {
+        try {
+            if (this.isEmbedded(dependency)) {
+                return this.embeddedArchive.getURL(dependency.getFileName());
+            }
+
+            return this.transform(repacker, this.basePath.resolve(dependency.getFileName())).toUri().toURL();
+        } catch (MalformedURLException e) {
+            this.getErrors().add(e);
+            return null;
         }
+    }
 
-        val saveLocation = this.basePath.resolve(fileName);
+    private Path transform(StoredJarRepacker repacker, @NonNull Path jar) {
+        if (repacker == null || !this.getErrors().isEmpty()) {
+            return jar;
+        }
 
         try {
-            if (!Files.exists(saveLocation)) {
-                val url = new URL(repoUrl + relativeUrl);
+            return repacker.repack(jar);
+        } catch (IOException e) {
+            // The original jar still works, it's just compressed.
+            return jar;
+        }
+    }
 
-                val connection = (HttpURLConnection) url.openConnection();
-                connection.setRequestMethod("HEAD");
+    private void pruneUnreferenced(@NonNull HDLConfig config, StoredJarRepacker repacker) {
+        val referenced = Stream.concat(
+            DependencyDownloader.PRIVATE_DEPENDENCIES.stream(),
+            config.getDependencies().stream()
+        )
+            .map(ResolvedDependency::getFileName)
+            .collect(Collectors.toSet());
 
-                if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
-                    return false;
-                }
+        try {
+            DependencyCache.pruneUnreferenced(this.basePath, referenced);
 
-                Files.createDirectories(this.basePath);
-                Files.copy(url.openStream(), saveLocation);
+            if (repacker != null) {
+                repacker.prune(referenced);
             }
+        } catch (IOException ignored) {
+            // Stale jars don't affect loading, they'll be pruned on the next successful load.
+        }
+    }
 
-            this.dependencyCount.addAndGet(1);
-        } catch (Exception e) {
-            this.errors.add(
-                new DependencyLoadException(
-                        new ResolvedDependency(relativeUrl, DefaultRepository.MAVEN_CENTRAL.getId(), fileName),
-                        DefaultRepository.MAVEN_CENTRAL.getRepository(),
-                        e.getMessage()
-                )
-            );
+    /**
+     * Downloads and injects the dependencies HDL itself needs, e.g. jackson for reading manifests. Called by
+     * {@link #loadDependencies()}, callers that need jackson earlier can call it first.
+     * <p>
+     * This also opens the dependencies embedded in the plugin jar, embedded dependencies are never downloaded.
+     *
+     * @return true if no errors occurred
+     */
+    public boolean loadPrivateDependencies() {
+        if (this.privateDependenciesLoaded) {
+            return this.getErrors().isEmpty();
         }
 
-        return this.errors.isEmpty();
-    }
+        this.privateDependenciesLoaded = true;
 
-    private void loadDependency(@NonNull String fileName) {
-        try {
-            this.classLoaderAccess.addURL(this.basePath.resolve(fileName).toUri().toURL());
-        } catch (MalformedURLException e) {
-            this.errors.add(e);
+        if (this.isPackagedEmbedded()) {
+            try {
+                this.embeddedArchive = EmbeddedArchive.open(this.classLoader);
+            } catch (IOException | RuntimeException e) {
+                // A broken plugin jar falls back to downloading, which reports any dependency that is still missing.
+                this.embeddedArchive = null;
+            }
+        }
+
+        if (!DependencyDownloader.PRIVATE_DEPENDENCIES.stream().allMatch(this::isEmbedded)) {
+            this.downloader.downloadPrivateDependencies();
         }
+
+        DependencyDownloader.PRIVATE_DEPENDENCIES
+            .stream()
+            .map(dependency -> this.locate(null, dependency))
+            .filter(Objects::nonNull)
+            .forEach(this.classLoaderAccess::addURL);
+
+        return this.getErrors().isEmpty();
     }
 
-    private void loadPrivateDependencies() {
-        privateDependencies
-            .parallelStream()
-            .forEach(
-                dependency -> this.downloadDependencyFromURLString(
-                    CENTRAL_URL,
-                    dependency.getKey(),
-                    dependency.getValue()
-                )
-            );
+    /**
+     * Embedded mode always embeds HDL's own dependencies, so a single resource lookup tells whether the plugin jar
+     * is worth mapping and indexing.
+     */
+    private boolean isPackagedEmbedded() {
+        val probe = EmbeddedArchive.LIBRARY_DIRECTORY + DependencyDownloader.PRIVATE_DEPENDENCIES.get(0).getFileName();
+        return this.classLoader.getResource(probe) != null;
+    }
 
-        privateDependencies
-            .forEach(dependency -> this.loadDependency(dependency.getValue()));
+    public Set<Throwable> getErrors() {
+        return this.downloader.getErrors();
     }
 
     public int getDependencyCount() {
-        return dependencyCount.get();
+        return this.downloader.getDependencyCount();
+    }
+
+    /**
+     * @return the amount of bytes downloaded for the dependencies in the manifest
+     */
+    public long getDownloadedBytes() {
+        return this.downloader.getDownloadedBytes();
+    }
+
+    /**
+     * @return the amount of bytes the missing dependencies in the manifest add up to
+     */
+    public long getTotalBytes() {
+        return this.downloader.getTotalBytes();
+    }
+
+    /**
+     * @return the nanoseconds download threads spent throttled, summed over all threads
+     */
+    public long getThrottledNanos() {
+        return this.downloader.getThrottledNanos();
     }
 }
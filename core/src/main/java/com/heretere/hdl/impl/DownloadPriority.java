@@ -0,0 +1,18 @@
+package com.heretere.hdl.impl;
+
+/**
+ * How urgently {@link DependencyDownloader} needs its downloads.
+ */
+public enum DownloadPriority {
+    /**
+     * Something is blocked on the download, e.g. the server boot. Never throttled.
+     */
+    CRITICAL,
+    /**
+     * Nothing waits for the download, e.g. optional features loaded from an async task on a running server.
+     * Throttled to the background bandwidth if one is configured. Never use this for loads that block a thread
+     * something else waits on, like the server thread during {@code onLoad}, since throttling only makes that block
+     * longer.
+     */
+    BACKGROUND
+}
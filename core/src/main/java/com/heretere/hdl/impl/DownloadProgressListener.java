@@ -0,0 +1,41 @@
+package com.heretere.hdl.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+
+import lombok.val;
+
+/**
+ * Receives progress updates while {@link DependencyLoader} downloads the dependencies from the manifest.
+ */
+@FunctionalInterface
+public interface DownloadProgressListener {
+    /**
+     * Creates a listener that only reports every {@code step} percent, each step at most once even though several
+     * download threads report progress. 100% isn't reported, callers log the finished download themselves.
+     *
+     * @param step     the step in percent
+     * @param reporter receives the reached percentage and the amount of bytes that need to be downloaded
+     * @return the listener
+     */
+    static DownloadProgressListener inSteps(int step, BiConsumer<Integer, Long> reporter) {
+        val reportedPercent = new AtomicInteger(0);
+
+        return (downloadedBytes, totalBytes) -> {
+            val percent = (int) (downloadedBytes * 100 / totalBytes) / step * step;
+            val previous = reportedPercent.get();
+
+            if (percent > previous && percent < 100 && reportedPercent.compareAndSet(previous, percent)) {
+                reporter.accept(percent, totalBytes);
+            }
+        };
+    }
+
+    /**
+     * Called every time a chunk of a dependency has been written to disk. Invoked from the download threads.
+     *
+     * @param downloadedBytes the amount of bytes downloaded so far
+     * @param totalBytes      the amount of bytes that need to be downloaded, as recorded in the manifest
+     */
+    void onProgress(long downloadedBytes, long totalBytes);
+}
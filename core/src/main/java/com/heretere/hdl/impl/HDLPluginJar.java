@@ -0,0 +1,151 @@
+package com.heretere.hdl.impl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipFile;
+
+import com.heretere.hdl.common.json.HDLConfig;
+import com.heretere.hdl.impl.zip.EmbeddedArchive;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.val;
+
+/**
+ * A plugin jar that embeds an {@code hdl_dependencies.json} manifest. Reading one requires jackson to be loaded.
+ */
+@Value
+public class HDLPluginJar {
+    /**
+     * The folder inside a plugins directory that is shared by every HDL plugin. Not a valid plugin name, so it can't
+     * collide with a plugin's data folder.
+     */
+    public static final String SHARED_FOLDER = ".hdl";
+
+    private static final String MANIFEST = "hdl_dependencies.json";
+    private static final String PLUGIN_YML = "plugin.yml";
+    private static final String JAR_EXTENSION = ".jar";
+    private static final String MIRROR_STATISTICS_FILE = "mirror_statistics.properties";
+    private static final Pattern NAME = Pattern.compile("^name:\\s*['\"]?([^'\"#]+?)['\"]?\\s*(#.*)?$");
+
+    Path jar;
+    /**
+     * The plugin name as bukkit uses it for the data folder, with spaces replaced by underscores.
+     */
+    String name;
+    HDLConfig config;
+    /**
+     * The file names of the dependencies the plugin jar embeds, these never have to be downloaded.
+     */
+    Set<String> embeddedDependencies;
+
+    /**
+     * @param pluginsDirectory the plugins directory
+     * @return the mirror statistics file every HDL plugin in the plugins directory shares
+     */
+    public static Path mirrorStatisticsFile(@NonNull Path pluginsDirectory) {
+        return pluginsDirectory.resolve(SHARED_FOLDER).resolve(MIRROR_STATISTICS_FILE);
+    }
+
+    /**
+     * Reads every jar in the directory that embeds an hdl manifest. Unreadable jars are skipped.
+     *
+     * @param directory the plugins directory
+     * @return the hdl plugins, sorted by jar name
+     * @throws IOException if the directory couldn't be listed
+     */
+    public static List<HDLPluginJar> scan(@NonNull Path directory) throws IOException {
+        final List<Path> jars;
+        try (Stream<Path> files = Files.list(directory)) {
+            jars = files
+                .filter(file -> file.getFileName().toString().endsWith(JAR_EXTENSION))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+
+        val plugins = new ArrayList<HDLPluginJar>();
+
+        for (val jar : jars) {
+            try {
+                val plugin = HDLPluginJar.read(jar);
+
+                if (plugin != null) {
+                    plugins.add(plugin);
+                }
+            } catch (IOException ignored) {
+                // Not every jar in a plugins directory has to be readable, e.g. jars that are still being copied.
+            }
+        }
+
+        return plugins;
+    }
+
+    /**
+     * Reads the manifest and the bukkit plugin name from a jar.
+     *
+     * @param jar the plugin jar
+     * @return the plugin, or null if the jar doesn't embed an hdl manifest
+     * @throws IOException if the jar couldn't be read
+     */
+    public static HDLPluginJar read(@NonNull Path jar) throws IOException {
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            val manifest = zip.getEntry(MANIFEST);
+
+            if (manifest == null) {
+                return null;
+            }
+
+            final HDLConfig config;
+            try (InputStream input = zip.getInputStream(manifest)) {
+                config = new com.fasterxml.jackson.databind.ObjectMapper().readValue(input, HDLConfig.class);
+            }
+
+            val pluginYml = zip.getEntry(PLUGIN_YML);
+            String name = null;
+
+            if (pluginYml != null) {
+                try (
+                        BufferedReader reader = new BufferedReader(
+                                new InputStreamReader(zip.getInputStream(pluginYml), StandardCharsets.UTF_8)
+                        )
+                ) {
+                    name = reader.lines()
+                        .map(NAME::matcher)
+                        .filter(matcher -> matcher.matches())
+                        .map(matcher -> matcher.group(1).trim())
+                        .findFirst()
+                        .orElse(null);
+                }
+            }
+
+            if (name == null) {
+                val fileName = jar.getFileName().toString();
+                name = fileName.substring(0, fileName.length() - JAR_EXTENSION.length());
+            }
+
+            // Matches PluginDescriptionFile#getName, which names the data folder.
+            name = name.replace(' ', '_');
+
+            val embedded = zip.stream()
+                .map(entry -> entry.getName())
+                .filter(entryName -> entryName.startsWith(EmbeddedArchive.LIBRARY_DIRECTORY))
+                .map(entryName -> entryName.substring(EmbeddedArchive.LIBRARY_DIRECTORY.length()))
+                .filter(fileName -> fileName.endsWith(JAR_EXTENSION) && !fileName.contains("/"))
+                .collect(Collectors.toSet());
+
+            return new HDLPluginJar(jar, name, config, Collections.unmodifiableSet(embedded));
+        }
+    }
+}
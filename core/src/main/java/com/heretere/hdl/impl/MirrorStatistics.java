@@ -0,0 +1,216 @@
+package com.heretere.hdl.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Keeps track of the observed time-to-first-byte and throughput of every mirror url a dependency was downloaded from.
+ * The statistics are persisted in a small properties file so later cold starts can try the fastest mirror first.
+ * <p>
+ * A properties file is used instead of json since the statistics are needed before jackson itself is downloaded.
+ * Several downloaders can share one file, saving only overwrites the mirrors that were measured since loading.
+ */
+public final class MirrorStatistics {
+    /**
+     * The amount of bytes used to turn ttfb and throughput into a single comparable score.
+     */
+    private static final long REFERENCE_BYTES = 1024L * 1024L;
+    /**
+     * The amount of milliseconds added to a mirror's score for every consecutive failure.
+     */
+    private static final long FAILURE_PENALTY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    /**
+     * The weight of a new sample in the exponentially weighted moving averages.
+     */
+    private static final double SAMPLE_WEIGHT = 0.3D;
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+    private final Set<String> measured;
+
+    private MirrorStatistics(@NonNull Path file) {
+        this.file = file;
+        this.entries = new ConcurrentHashMap<>();
+        this.measured = ConcurrentHashMap.newKeySet();
+    }
+
+    /**
+     * Loads the mirror statistics from the given file. Missing or unreadable files result in empty statistics.
+     *
+     * @param file the statistics file
+     * @return the loaded statistics
+     */
+    public static MirrorStatistics load(@NonNull Path file) {
+        val statistics = new MirrorStatistics(file);
+
+        if (!Files.exists(file)) {
+            return statistics;
+        }
+
+        val properties = read(file);
+
+        if (properties == null) {
+            return statistics;
+        }
+
+        properties.stringPropertyNames().forEach(url -> {
+            val entry = Entry.parse(properties.getProperty(url));
+
+            if (entry != null) {
+                statistics.entries.put(url, entry);
+            }
+        });
+
+        return statistics;
+    }
+
+    private static Properties read(@NonNull Path file) {
+        val properties = new Properties();
+
+        try (InputStream input = Files.newInputStream(file)) {
+            properties.load(input);
+        } catch (IOException e) {
+            return null;
+        }
+
+        return properties;
+    }
+
+    /**
+     * Orders the given mirror urls from best to worst score. Mirrors that haven't been measured yet are tried first
+     * in their configured order so every mirror eventually gets a score.
+     *
+     * @param urls the mirror urls
+     * @return a new list containing the urls in the order they should be tried
+     */
+    public List<String> order(@NonNull List<String> urls) {
+        val ordered = new ArrayList<String>(urls);
+        ordered.sort(Comparator.comparingLong(this::score));
+        return ordered;
+    }
+
+    /**
+     * Records a successful download from a mirror.
+     *
+     * @param url              the mirror url
+     * @param firstByteNanos   the nanoseconds it took until the mirror responded
+     * @param bytes            the amount of bytes downloaded
+     * @param transferNanos    the nanoseconds it took to transfer the body
+     */
+    public void recordSuccess(@NonNull String url, long firstByteNanos, long bytes, long transferNanos) {
+        val firstByteMillis = TimeUnit.NANOSECONDS.toMillis(firstByteNanos);
+        val bytesPerSecond = bytes * TimeUnit.SECONDS.toNanos(1) / Math.max(1L, transferNanos);
+
+        this.entries.computeIfAbsent(url, key -> new Entry()).update(firstByteMillis, bytesPerSecond);
+        this.measured.add(url);
+    }
+
+    /**
+     * Records a failed download attempt from a mirror.
+     *
+     * @param url the mirror url
+     */
+    public void recordFailure(@NonNull String url) {
+        this.entries.computeIfAbsent(url, key -> new Entry()).fail();
+        this.measured.add(url);
+    }
+
+    /**
+     * Writes the mirrors measured since loading back to disk. Mirrors another downloader wrote to the file in the
+     * meantime are kept.
+     *
+     * @throws IOException if the file couldn't be written
+     */
+    public synchronized void save() throws IOException {
+        val current = Files.exists(this.file) ? read(this.file) : null;
+        val properties = current == null ? new Properties() : current;
+        this.measured.forEach(url -> properties.setProperty(url, this.entries.get(url).serialize()));
+
+        val directory = this.file.toAbsolutePath().getParent();
+        Files.createDirectories(directory);
+
+        // Written to a temporary file first so a concurrent load never reads a partial file.
+        val temporary = Files.createTempFile(directory, this.file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream output = Files.newOutputStream(temporary)) {
+                properties.store(output, "HDL mirror statistics");
+            }
+
+            Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private long score(@NonNull String url) {
+        val entry = this.entries.get(url);
+        return entry == null ? -1L : entry.score();
+    }
+
+    private static final class Entry {
+        private double firstByteMillis = -1D;
+        private double bytesPerSecond = -1D;
+        private int failures;
+
+        private static Entry parse(String value) {
+            val parts = value.split(";");
+
+            if (parts.length != 3) {
+                return null;
+            }
+
+            try {
+                val entry = new Entry();
+                entry.firstByteMillis = Double.parseDouble(parts[0]);
+                entry.bytesPerSecond = Double.parseDouble(parts[1]);
+                entry.failures = Integer.parseInt(parts[2]);
+                return entry;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        private synchronized void update(long firstByteMillis, long bytesPerSecond) {
+            this.firstByteMillis = average(this.firstByteMillis, firstByteMillis);
+            this.bytesPerSecond = average(this.bytesPerSecond, bytesPerSecond);
+            this.failures = 0;
+        }
+
+        private synchronized void fail() {
+            this.failures++;
+        }
+
+        private synchronized long score() {
+            long score = this.failures * FAILURE_PENALTY_MILLIS;
+
+            if (this.firstByteMillis >= 0 && this.bytesPerSecond > 0) {
+                score += (long) (this.firstByteMillis + (REFERENCE_BYTES * 1000D) / this.bytesPerSecond);
+            }
+
+            return score;
+        }
+
+        private synchronized String serialize() {
+            return this.firstByteMillis + ";" + this.bytesPerSecond + ";" + this.failures;
+        }
+
+        private static double average(double current, double sample) {
+            return current < 0 ? sample : current + SAMPLE_WEIGHT * (sample - current);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.heretere.hdl.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import com.heretere.hdl.impl.zip.AlignedZipWriter;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Rewrites dependency jars with uncompressed entries so classes don't have to be inflated on the loading thread.
+ * Entries are aligned by {@link AlignedZipWriter}.
+ * <p>
+ * Repacked jars are cached in {@code .stored/<sha-256 of the original>.jar} inside the dependency folder. An index
+ * remembers the hash of every original together with its size and modification time, so originals are only hashed
+ * again when they change.
+ */
+public final class StoredJarRepacker {
+    private static final String DIRECTORY = ".stored";
+    private static final String INDEX = "index.properties";
+    private static final String JAR_EXTENSION = ".jar";
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Path directory;
+    private final Properties index;
+
+    public StoredJarRepacker(@NonNull Path basePath) {
+        this.directory = basePath.resolve(DIRECTORY);
+        this.index = new Properties();
+
+        val indexFile = this.directory.resolve(INDEX);
+        if (Files.exists(indexFile)) {
+            try (InputStream input = Files.newInputStream(indexFile)) {
+                this.index.load(input);
+            } catch (IOException ignored) {
+                // A broken index only means the originals are hashed again.
+            }
+        }
+    }
+
+    /**
+     * Returns the repacked version of the jar, repacking it if there is no cached version yet.
+     *
+     * @param jar the original jar
+     * @return the repacked jar
+     * @throws IOException if the jar couldn't be read or the repacked jar couldn't be written
+     */
+    public Path repack(@NonNull Path jar) throws IOException {
+        val hash = this.hash(jar);
+        val repacked = this.directory.resolve(hash + JAR_EXTENSION);
+
+        if (!Files.exists(repacked)) {
+            Files.createDirectories(this.directory);
+
+            val temporary = this.directory.resolve(hash + JAR_EXTENSION + ".tmp");
+            try {
+                repack(jar, temporary);
+                Files.move(temporary, repacked, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temporary);
+            }
+        }
+
+        return repacked;
+    }
+
+    /**
+     * Forgets every original that isn't referenced anymore and deletes the repacked jars nothing maps to.
+     *
+     * @param referenced the file names of the originals referenced by the current manifest
+     * @throws IOException if the cache couldn't be pruned
+     */
+    public synchronized void prune(@NonNull Set<String> referenced) throws IOException {
+        this.index.stringPropertyNames()
+            .stream()
+            .filter(fileName -> !referenced.contains(fileName))
+            .forEach(this.index::remove);
+
+        val hashes = this.index.stringPropertyNames()
+            .stream()
+            .map(fileName -> this.index.getProperty(fileName).split(":"))
+            .filter(entry -> entry.length == 3)
+            .map(entry -> entry[2] + JAR_EXTENSION)
+            .collect(Collectors.toSet());
+
+        DependencyCache.pruneUnreferenced(this.directory, hashes);
+    }
+
+    /**
+     * Writes the hash index back to disk.
+     *
+     * @throws IOException if the index couldn't be written
+     */
+    public synchronized void save() throws IOException {
+        Files.createDirectories(this.directory);
+
+        try (OutputStream output = Files.newOutputStream(this.directory.resolve(INDEX))) {
+            this.index.store(output, "HDL repacked jars");
+        }
+    }
+
+    private String hash(@NonNull Path jar) throws IOException {
+        val fileName = jar.getFileName().toString();
+        val stamp = Files.size(jar) + ":" + Files.getLastModifiedTime(jar).toMillis();
+
+        synchronized (this) {
+            val entry = this.index.getProperty(fileName);
+
+            if (entry != null && entry.startsWith(stamp + ":")) {
+                return entry.substring(stamp.length() + 1);
+            }
+        }
+
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (InputStream input = Files.newInputStream(jar)) {
+            val buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+
+        val hash = new StringBuilder();
+        for (val b : digest.digest()) {
+            hash.append(String.format("%02x", b));
+        }
+
+        synchronized (this) {
+            this.index.setProperty(fileName, stamp + ":" + hash);
+        }
+
+        return hash.toString();
+    }
+
+    private static void repack(@NonNull Path source, @NonNull Path destination) throws IOException {
+        try (
+                ZipFile zip = new ZipFile(source.toFile());
+                AlignedZipWriter output = new AlignedZipWriter(Files.newOutputStream(destination))
+        ) {
+            val entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                val original = entries.nextElement();
+                output.putStored(original.getName(), original.getTime(), read(zip, original));
+            }
+        }
+    }
+
+    private static byte[] read(@NonNull ZipFile zip, @NonNull ZipEntry entry) throws IOException {
+        try (InputStream input = zip.getInputStream(entry)) {
+            val output = new ByteArrayOutputStream(Math.max(0, (int) entry.getSize()));
+            val buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+            }
+            return output.toByteArray();
+        }
+    }
+}
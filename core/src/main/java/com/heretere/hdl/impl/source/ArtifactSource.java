@@ -0,0 +1,25 @@
+package com.heretere.hdl.impl.source;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import lombok.NonNull;
+
+/**
+ * A place {@link com.heretere.hdl.impl.DependencyLoader} can take artifacts from before it tries any network mirror.
+ */
+@FunctionalInterface
+public interface ArtifactSource {
+    /**
+     * Places the artifact at the destination if this source contains it.
+     *
+     * @param relativeUrl the maven layout path of the artifact,
+     *                    e.g. {@code com/google/guava/guava/31.0-jre/guava-31.0-jre.jar}
+     * @param fileName    the file name of the artifact
+     * @param destination the file the artifact should be written to
+     * @return true if the destination now contains the artifact
+     * @throws IOException if the artifact was found but couldn't be copied
+     */
+    boolean provide(@NonNull String relativeUrl, @NonNull String fileName, @NonNull Path destination)
+            throws IOException;
+}
@@ -0,0 +1,110 @@
+package com.heretere.hdl.impl.source;
+
+import java.net.URI;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Factories for the built-in {@link ArtifactSource}s.
+ */
+public final class ArtifactSources {
+    /**
+     * The system property an operator can use to configure the source chain, e.g.
+     * {@code -Dhdl.sources=/opt/hdl-seed,maven-local,gradle-cache,file:///mnt/mirror/maven2/}.
+     * <p>
+     * Entries are tried in order. {@code maven-local} and {@code gradle-cache} refer to the user's caches,
+     * {@code file:} uris are maven layout repositories and anything else is a flat seed directory.
+     */
+    public static final String SYSTEM_PROPERTY = "hdl.sources";
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactSources.class.getName());
+
+    private ArtifactSources() {
+        throw new IllegalStateException("Utility class.");
+    }
+
+    /**
+     * @return the root of the user's local maven repository
+     */
+    public static Path mavenLocalRoot() {
+        val repository = System.getProperty("maven.repo.local");
+
+        return repository != null
+            ? Paths.get(repository)
+            : Paths.get(System.getProperty("user.home"), ".m2", "repository");
+    }
+
+    public static ArtifactSource mavenLocal() {
+        return new MavenLayoutSource(mavenLocalRoot());
+    }
+
+    public static ArtifactSource gradleCache() {
+        val gradleHome = System.getenv("GRADLE_USER_HOME");
+
+        return new GradleCacheSource(
+                (gradleHome != null ? Paths.get(gradleHome) : Paths.get(System.getProperty("user.home"), ".gradle"))
+                    .resolve("caches")
+                    .resolve("modules-2")
+                    .resolve("files-2.1")
+        );
+    }
+
+    public static ArtifactSource seedDirectory(@NonNull Path directory) {
+        return new DirectorySource(directory);
+    }
+
+    public static ArtifactSource mavenLayout(@NonNull URI uri) {
+        return new MavenLayoutSource(Paths.get(uri));
+    }
+
+    /**
+     * Invalid entries, e.g. relative {@code file:} uris, are logged and skipped so a typo can't break plugin
+     * construction.
+     *
+     * @return the sources configured through {@link #SYSTEM_PROPERTY}, empty if the property isn't set
+     */
+    public static List<ArtifactSource> fromSystemProperty() {
+        val sources = new ArrayList<ArtifactSource>();
+        val property = System.getProperty(SYSTEM_PROPERTY);
+
+        if (property == null) {
+            return sources;
+        }
+
+        Arrays.stream(property.split(","))
+            .map(String::trim)
+            .filter(entry -> !entry.isEmpty())
+            .forEach(entry -> {
+                try {
+                    sources.add(fromString(entry));
+                } catch (IllegalArgumentException | FileSystemNotFoundException e) {
+                    LOGGER.log(
+                        Level.WARNING,
+                        "Ignoring invalid " + SYSTEM_PROPERTY + " entry '" + entry + "': " + e.getMessage()
+                    );
+                }
+            });
+
+        return sources;
+    }
+
+    private static ArtifactSource fromString(@NonNull String entry) {
+        switch (entry) {
+            case "maven-local":
+                return mavenLocal();
+            case "gradle-cache":
+                return gradleCache();
+            default:
+                return entry.startsWith("file:") ? mavenLayout(URI.create(entry)) : seedDirectory(Paths.get(entry));
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.heretere.hdl.impl.source;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.heretere.hdl.impl.DependencyCache;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A flat seed directory that contains artifacts by file name, e.g. a folder provisioned by an operator.
+ */
+@RequiredArgsConstructor
+@ToString
+public class DirectorySource extends LocalArtifactSource {
+    @NonNull
+    private final Path directory;
+
+    @Override
+    protected Path locate(@NonNull String relativeUrl, @NonNull String fileName) {
+        return this.directory.resolve(fileName);
+    }
+
+    @Override
+    public boolean provide(@NonNull String relativeUrl, @NonNull String fileName, @NonNull Path destination)
+            throws IOException {
+        if (!super.provide(relativeUrl, fileName, destination)) {
+            return false;
+        }
+
+        DependencyCache.touch(this.locate(relativeUrl, fileName));
+        return true;
+    }
+}
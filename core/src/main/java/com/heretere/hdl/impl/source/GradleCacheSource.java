@@ -0,0 +1,49 @@
+package com.heretere.hdl.impl.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+import lombok.val;
+
+/**
+ * The gradle module cache, {@code caches/modules-2/files-2.1/<group>/<artifact>/<version>/<sha1>/<file>}.
+ */
+@RequiredArgsConstructor
+@ToString
+public class GradleCacheSource extends LocalArtifactSource {
+    @NonNull
+    private final Path root;
+
+    @Override
+    protected Path locate(@NonNull String relativeUrl, @NonNull String fileName) throws IOException {
+        val parts = relativeUrl.split("/");
+
+        if (parts.length < 4) {
+            return null;
+        }
+
+        val group = String.join(".", Arrays.copyOfRange(parts, 0, parts.length - 3));
+        val versionDirectory = this.root
+            .resolve(group)
+            .resolve(parts[parts.length - 3])
+            .resolve(parts[parts.length - 2]);
+
+        if (!Files.isDirectory(versionDirectory)) {
+            return null;
+        }
+
+        try (Stream<Path> hashes = Files.list(versionDirectory)) {
+            return hashes
+                .map(hash -> hash.resolve(fileName))
+                .filter(Files::isRegularFile)
+                .findFirst()
+                .orElse(null);
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.heretere.hdl.impl.source;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Base for sources that live on the local file system. Artifacts are hard linked into the destination when the
+ * file system allows it, otherwise they are copied.
+ */
+public abstract class LocalArtifactSource implements ArtifactSource {
+    /**
+     * @param relativeUrl the maven layout path of the artifact
+     * @param fileName    the file name of the artifact
+     * @return the location of the artifact in this source, or null if this source doesn't contain it
+     * @throws IOException if the source couldn't be searched
+     */
+    protected abstract Path locate(@NonNull String relativeUrl, @NonNull String fileName) throws IOException;
+
+    @Override
+    public boolean provide(@NonNull String relativeUrl, @NonNull String fileName, @NonNull Path destination)
+            throws IOException {
+        val location = this.locate(relativeUrl, fileName);
+
+        if (location == null || !Files.isRegularFile(location)) {
+            return false;
+        }
+
+        Files.createDirectories(destination.toAbsolutePath().getParent());
+
+        try {
+            Files.createLink(destination, location);
+        } catch (IOException | UnsupportedOperationException e) {
+            Files.copy(location, destination, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        return true;
+    }
+}
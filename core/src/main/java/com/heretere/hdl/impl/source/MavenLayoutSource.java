@@ -0,0 +1,22 @@
+package com.heretere.hdl.impl.source;
+
+import java.nio.file.Path;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.ToString;
+
+/**
+ * A directory using the maven repository layout, e.g. {@code ~/.m2/repository} or a {@code file://} repository.
+ */
+@RequiredArgsConstructor
+@ToString
+public class MavenLayoutSource extends LocalArtifactSource {
+    @NonNull
+    private final Path root;
+
+    @Override
+    protected Path locate(@NonNull String relativeUrl, @NonNull String fileName) {
+        return this.root.resolve(relativeUrl);
+    }
+}
@@ -0,0 +1,140 @@
+package com.heretere.hdl.impl.zip;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.GregorianCalendar;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Writes zip files whose uncompressed entries start at aligned offsets, so they can be read straight out of a memory
+ * mapped file. Entries of at least a page are page aligned, smaller entries are aligned to four bytes.
+ */
+public final class AlignedZipWriter implements Closeable {
+    /**
+     * Earlier timestamps make the zip writer append an extended timestamp after the alignment padding.
+     */
+    public static final long DOS_EPOCH = new GregorianCalendar(1980, 0, 1).getTimeInMillis();
+
+    static final int PAGE_SIZE = 4096;
+    private static final int WORD_SIZE = 4;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    /**
+     * The extra field id zipalign uses for alignment padding, followed by a two byte alignment and the padding.
+     */
+    private static final int ALIGNMENT_EXTRA_ID = 0xD935;
+    private static final int ALIGNMENT_EXTRA_SIZE = 6;
+
+    private final CountingOutputStream counter;
+    private final ZipOutputStream output;
+
+    public AlignedZipWriter(@NonNull OutputStream output) {
+        this.counter = new CountingOutputStream(new BufferedOutputStream(output));
+        this.output = new ZipOutputStream(this.counter);
+    }
+
+    /**
+     * Writes an uncompressed entry whose data starts at an aligned offset.
+     *
+     * @param name the entry name
+     * @param time the modification time, clamped to {@link #DOS_EPOCH}
+     * @param data the entry data
+     * @throws IOException if the entry couldn't be written
+     */
+    public void putStored(@NonNull String name, long time, byte[] data) throws IOException {
+        val crc = new CRC32();
+        crc.update(data);
+
+        val entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setTime(Math.max(time, DOS_EPOCH));
+        entry.setSize(data.length);
+        entry.setCompressedSize(data.length);
+        entry.setCrc(crc.getValue());
+
+        if (!entry.isDirectory()) {
+            entry.setExtra(alignment(this.counter.getCount(), name, data.length));
+        }
+
+        this.output.putNextEntry(entry);
+        this.output.write(data);
+        this.output.closeEntry();
+    }
+
+    /**
+     * Writes a compressed entry. Compressed entries are never aligned since they have to be inflated anyway.
+     *
+     * @param name the entry name
+     * @param time the modification time, clamped to {@link #DOS_EPOCH}
+     * @param data the uncompressed entry data
+     * @throws IOException if the entry couldn't be written
+     */
+    public void putDeflated(@NonNull String name, long time, byte[] data) throws IOException {
+        val entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.DEFLATED);
+        entry.setTime(Math.max(time, DOS_EPOCH));
+
+        this.output.putNextEntry(entry);
+        this.output.write(data);
+        this.output.closeEntry();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.output.close();
+    }
+
+    /**
+     * Builds an alignment extra field that moves the entry's data to the next aligned offset.
+     */
+    private static byte[] alignment(long headerOffset, @NonNull String name, int size) {
+        val alignment = size >= PAGE_SIZE ? PAGE_SIZE : WORD_SIZE;
+        val dataOffset = headerOffset
+            + LOCAL_HEADER_SIZE
+            + name.getBytes(StandardCharsets.UTF_8).length
+            + ALIGNMENT_EXTRA_SIZE;
+        val padding = (int) ((alignment - dataOffset % alignment) % alignment);
+
+        val extra = new byte[ALIGNMENT_EXTRA_SIZE + padding];
+        extra[0] = (byte) (ALIGNMENT_EXTRA_ID & 0xFF);
+        extra[1] = (byte) ((ALIGNMENT_EXTRA_ID >> 8) & 0xFF);
+        extra[2] = (byte) ((2 + padding) & 0xFF);
+        extra[3] = (byte) (((2 + padding) >> 8) & 0xFF);
+        extra[4] = (byte) (alignment & 0xFF);
+        extra[5] = (byte) ((alignment >> 8) & 0xFF);
+
+        return extra;
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        private CountingOutputStream(@NonNull OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            super.out.write(b);
+            this.count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            super.out.write(b, off, len);
+            this.count += len;
+        }
+
+        private long getCount() {
+            return this.count;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.heretere.hdl.impl.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * The dependency jars embedded in a plugin jar by the gradle plugin's embedded mode.
+ * <p>
+ * The plugin jar is memory mapped once and the central directory of every nested jar is indexed, classes and
+ * resources are then served straight from the mapping through {@link NestedJarURLStreamHandler} urls. Nested jars
+ * are stored uncompressed in the plugin jar, the entries inside of them are left exactly as they were published.
+ * <p>
+ * Replacing the plugin jar in place while the server is running invalidates the mapping, plugin jars have to be
+ * swapped by writing a new file and moving it over the old one.
+ * <p>
+ * Versioned entries of multi-release jars are resolved for the running java version. The manifests of nested jars
+ * are otherwise ignored, see {@link NestedJarURLStreamHandler}.
+ */
+public final class EmbeddedArchive {
+    /**
+     * The directory inside the plugin jar the dependency jars are embedded into.
+     */
+    public static final String LIBRARY_DIRECTORY = "META-INF/hdl/libs/";
+
+    private static final String MANIFEST = "hdl_dependencies.json";
+    private static final String JAR_EXTENSION = ".jar";
+    private static final String MULTI_RELEASE = "Multi-Release";
+
+    private final NestedJarURLStreamHandler handler;
+    private final Map<String, ZipIndex> jars;
+
+    private EmbeddedArchive(@NonNull NestedJarURLStreamHandler handler, @NonNull Map<String, ZipIndex> jars) {
+        this.handler = handler;
+        this.jars = jars;
+    }
+
+    /**
+     * Opens the embedded dependencies of the jar the classloader loads the hdl manifest from.
+     *
+     * @param classLoader the plugin's classloader
+     * @return the embedded dependencies or null if the plugin wasn't packaged in embedded mode
+     * @throws IOException if the plugin jar couldn't be mapped or contains an invalid nested jar
+     */
+    public static EmbeddedArchive open(@NonNull ClassLoader classLoader) throws IOException {
+        val jar = locate(classLoader);
+        return jar == null ? null : open(jar);
+    }
+
+    /**
+     * Opens the embedded dependencies of a plugin jar.
+     *
+     * @param jar the plugin jar
+     * @return the embedded dependencies or null if the jar doesn't embed any
+     * @throws IOException if the jar couldn't be mapped or contains an invalid nested jar
+     */
+    public static EmbeddedArchive open(@NonNull Path jar) throws IOException {
+        // The mapping stays valid after the channel is closed.
+        try (FileChannel channel = FileChannel.open(jar, StandardOpenOption.READ)) {
+            return index(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    private static EmbeddedArchive index(@NonNull ByteBuffer buffer) throws IOException {
+        val outer = ZipIndex.read(buffer);
+        val nested = new HashMap<String, ZipIndex>();
+        val multiRelease = new HashSet<String>();
+
+        for (val name : outer.getNames()) {
+            val fileName = name.substring(Math.min(name.length(), LIBRARY_DIRECTORY.length()));
+
+            if (!name.startsWith(LIBRARY_DIRECTORY) || !fileName.endsWith(JAR_EXTENSION) || fileName.contains("/")) {
+                continue;
+            }
+
+            val entry = outer.getEntry(name);
+
+            if (!entry.isStored()) {
+                throw new IOException("Embedded dependency " + fileName + " is compressed.");
+            }
+
+            val jar = ZipIndex.read(outer.slice(entry));
+            nested.put(fileName, jar);
+
+            if (isMultiRelease(jar)) {
+                multiRelease.add(fileName);
+            }
+        }
+
+        if (nested.isEmpty()) {
+            return null;
+        }
+
+        val jars = Collections.unmodifiableMap(nested);
+
+        return new EmbeddedArchive(
+                new NestedJarURLStreamHandler(jars, Collections.unmodifiableSet(multiRelease)),
+                jars
+        );
+    }
+
+    private static boolean isMultiRelease(@NonNull ZipIndex jar) throws IOException {
+        val manifest = jar.getEntry(JarFile.MANIFEST_NAME);
+
+        if (manifest == null) {
+            return false;
+        }
+
+        try (InputStream input = jar.open(manifest)) {
+            return Boolean.parseBoolean(new Manifest(input).getMainAttributes().getValue(MULTI_RELEASE));
+        }
+    }
+
+    /**
+     * Reads a plugin jar the same way the runtime does and compares every embedded dependency with the jar it was
+     * embedded from, entry by entry. The plugin jar is read onto the heap instead of being mapped, so it isn't locked
+     * afterwards.
+     *
+     * @param jar       the plugin jar
+     * @param originals the jars that were embedded
+     * @throws IOException if an embedded dependency is missing, misaligned or differs from its original
+     */
+    public static void verify(@NonNull Path jar, @NonNull Collection<Path> originals) throws IOException {
+        val buffer = ByteBuffer.wrap(Files.readAllBytes(jar));
+        val outer = ZipIndex.read(buffer);
+        val archive = originals.isEmpty() ? null : index(buffer);
+
+        for (val original : originals) {
+            val fileName = original.getFileName().toString();
+            val nested = archive == null ? null : archive.jars.get(fileName);
+
+            if (nested == null) {
+                throw new IOException(fileName + " isn't embedded into " + jar + ".");
+            }
+
+            if (outer.dataOffset(outer.getEntry(LIBRARY_DIRECTORY + fileName)) % AlignedZipWriter.PAGE_SIZE != 0) {
+                throw new IOException(fileName + " isn't page aligned in " + jar + ".");
+            }
+
+            try (ZipFile zip = new ZipFile(original.toFile())) {
+                val names = new HashSet<String>();
+                val entries = zip.entries();
+
+                while (entries.hasMoreElements()) {
+                    val entry = entries.nextElement();
+                    val embedded = nested.getEntry(entry.getName());
+                    names.add(entry.getName());
+
+                    if (embedded == null || !Arrays.equals(read(zip, entry), read(nested, embedded))) {
+                        throw new IOException(entry.getName() + " in " + fileName + " differs from its original.");
+                    }
+                }
+
+                if (!names.containsAll(nested.getNames())) {
+                    throw new IOException(fileName + " contains entries its original doesn't.");
+                }
+            }
+        }
+    }
+
+    private static byte[] read(@NonNull ZipFile zip, @NonNull ZipEntry entry) throws IOException {
+        try (InputStream input = zip.getInputStream(entry)) {
+            return readFully(input);
+        }
+    }
+
+    private static byte[] read(@NonNull ZipIndex zip, @NonNull ZipIndex.Entry entry) throws IOException {
+        try (InputStream input = zip.open(entry)) {
+            return readFully(input);
+        }
+    }
+
+    private static byte[] readFully(@NonNull InputStream input) throws IOException {
+        val output = new ByteArrayOutputStream();
+        val buffer = new byte[8192];
+
+        int read;
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+        }
+
+        return output.toByteArray();
+    }
+
+    private static Path locate(@NonNull ClassLoader classLoader) {
+        val manifest = classLoader.getResource(MANIFEST);
+
+        if (manifest == null || !"jar".equals(manifest.getProtocol())) {
+            return null;
+        }
+
+        val path = manifest.getPath();
+        val separator = path.indexOf("!/");
+
+        try {
+            return separator < 0 ? null : Paths.get(new URI(path.substring(0, separator)));
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    public boolean contains(@NonNull String fileName) {
+        return this.jars.containsKey(fileName);
+    }
+
+    /**
+     * @param fileName the file name of an embedded dependency
+     * @return the url to add to a {@link java.net.URLClassLoader} to load classes from the dependency
+     * @throws MalformedURLException if the file name can't be part of a url
+     */
+    public URL getURL(@NonNull String fileName) throws MalformedURLException {
+        if (!this.contains(fileName)) {
+            throw new IllegalArgumentException(fileName + " isn't embedded.");
+        }
+
+        return this.handler.url(fileName);
+    }
+}
@@ -0,0 +1,174 @@
+package com.heretere.hdl.impl.zip;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Serves the entries of nested jars through urls of the form {@code hdl-nested:/<jar>!/<entry>}.
+ * <p>
+ * The url of a nested jar itself ends with a slash, which makes {@link java.net.URLClassLoader} resolve class and
+ * resource names against it and open them through this handler instead of downloading the jar to a temporary file.
+ * Entries of multi-release jars resolve to the highest versioned entry the running java version supports.
+ * <p>
+ * The class loader treats these urls like a plain directory, so it never reads the manifest of a nested jar. Packages
+ * are defined without the manifest's specification and implementation attributes and aren't sealed. The urls also
+ * only work through the handler instance that created them, they can't be rebuilt from their string form.
+ */
+final class NestedJarURLStreamHandler extends URLStreamHandler {
+    static final String PROTOCOL = "hdl-nested";
+    private static final String SEPARATOR = "!/";
+    private static final String VERSIONS_DIRECTORY = "META-INF/versions/";
+    private static final int BASE_RELEASE = 8;
+    private static final int RELEASE = release();
+    /**
+     * The class loader probes every nested jar in order for every class and resource, so misses are common and
+     * share one exception without a stack trace.
+     */
+    private static final FileNotFoundException MISSING_ENTRY = new MissingEntryException();
+
+    private final Map<String, ZipIndex> jars;
+    /**
+     * The file names of the nested jars with a {@code Multi-Release: true} manifest.
+     */
+    private final Set<String> multiRelease;
+
+    NestedJarURLStreamHandler(@NonNull Map<String, ZipIndex> jars, @NonNull Set<String> multiRelease) {
+        this.jars = jars;
+        this.multiRelease = multiRelease;
+    }
+
+    /**
+     * @return the feature version of the running java, e.g. 8 for {@code 1.8} and 17 for {@code 17}
+     */
+    private static int release() {
+        val version = System.getProperty("java.specification.version", "1.8");
+
+        try {
+            return Integer.parseInt(version.startsWith("1.") ? version.substring(2) : version);
+        } catch (NumberFormatException e) {
+            return BASE_RELEASE;
+        }
+    }
+
+    URL url(@NonNull String jarName) throws MalformedURLException {
+        return new URL(PROTOCOL, null, -1, "/" + jarName + SEPARATOR, this);
+    }
+
+    @Override
+    protected URLConnection openConnection(URL url) throws IOException {
+        val path = url.getPath();
+        val separator = path.indexOf(SEPARATOR);
+
+        if (!path.startsWith("/") || separator < 0) {
+            throw new MalformedURLException("Not a nested jar url: " + url);
+        }
+
+        val jarName = path.substring(1, separator);
+        val jar = this.jars.get(jarName);
+        val name = decode(path.substring(separator + SEPARATOR.length()));
+        val entry = jar == null ? null : this.find(jarName, jar, name);
+
+        if (entry == null) {
+            throw MISSING_ENTRY;
+        }
+
+        return new URLConnection(url) {
+            private InputStream input;
+
+            @Override
+            public void connect() {
+                super.connected = true;
+            }
+
+            /**
+             * Returns the same stream on every call like {@code FileURLConnection} does. URLClassLoader opens the
+             * stream once to check that the entry exists and again to read it, without closing the first one.
+             */
+            @Override
+            public synchronized InputStream getInputStream() throws IOException {
+                this.connect();
+
+                if (this.input == null) {
+                    this.input = jar.open(entry);
+                }
+
+                return this.input;
+            }
+
+            @Override
+            public long getContentLengthLong() {
+                return entry.getSize();
+            }
+
+            @Override
+            public int getContentLength() {
+                return entry.getSize() > Integer.MAX_VALUE ? -1 : (int) entry.getSize();
+            }
+        };
+    }
+
+    private ZipIndex.Entry find(@NonNull String jarName, @NonNull ZipIndex jar, @NonNull String name) {
+        if (this.multiRelease.contains(jarName) && !name.startsWith("META-INF/")) {
+            for (int release = RELEASE; release > BASE_RELEASE; release--) {
+                val versioned = jar.getEntry(VERSIONS_DIRECTORY + release + "/" + name);
+
+                if (versioned != null) {
+                    return versioned;
+                }
+            }
+        }
+
+        return jar.getEntry(name);
+    }
+
+    /**
+     * Undoes the percent encoding {@link java.net.URLClassLoader} applies to resource names. Unlike
+     * {@link java.net.URLDecoder} this leaves plus signs alone.
+     */
+    private static String decode(@NonNull String path) {
+        if (path.indexOf('%') < 0) {
+            return path;
+        }
+
+        val bytes = new ByteArrayOutputStream(path.length());
+
+        for (int i = 0; i < path.length(); i++) {
+            val c = path.charAt(i);
+
+            if (c == '%' && i + 2 < path.length()) {
+                bytes.write(Integer.parseInt(path.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                val encoded = String.valueOf(c).getBytes(StandardCharsets.UTF_8);
+                bytes.write(encoded, 0, encoded.length);
+            }
+        }
+
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static final class MissingEntryException extends FileNotFoundException {
+        private static final long serialVersionUID = 1L;
+
+        private MissingEntryException() {
+            super("Entry not found in nested jar.");
+        }
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+}
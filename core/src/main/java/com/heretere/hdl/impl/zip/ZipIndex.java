@@ -0,0 +1,268 @@
+package com.heretere.hdl.impl.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+import lombok.NonNull;
+import lombok.Value;
+import lombok.val;
+
+/**
+ * An index of the central directory of a zip file that lives in a {@link ByteBuffer}, e.g. a memory mapped file or a
+ * slice of one. Entries are read straight from the buffer, nothing is copied or extracted.
+ * <p>
+ * Only the classic zip format is supported, which covers every jar smaller than 4 GiB with fewer than 65535 entries.
+ */
+final class ZipIndex {
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int CENTRAL_SIGNATURE = 0x02014b50;
+    private static final int LOCAL_SIGNATURE = 0x04034b50;
+    private static final int END_SIZE = 22;
+    private static final int CENTRAL_SIZE = 46;
+    private static final int LOCAL_SIZE = 30;
+    private static final int MAX_COMMENT_SIZE = 0xFFFF;
+    private static final int BUFFER_SIZE = 8192;
+
+    private final ByteBuffer buffer;
+    private final Map<String, Entry> entries;
+
+    private ZipIndex(@NonNull ByteBuffer buffer, @NonNull Map<String, Entry> entries) {
+        this.buffer = buffer;
+        this.entries = entries;
+    }
+
+    /**
+     * Reads the central directory of the zip file in the buffer.
+     *
+     * @param buffer the zip file, from position zero to its limit
+     * @return the index
+     * @throws IOException if the buffer doesn't contain a supported zip file
+     */
+    static ZipIndex read(@NonNull ByteBuffer buffer) throws IOException {
+        val zip = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        val end = findEnd(zip);
+
+        val count = unsignedShort(zip, end + 10);
+        long position = unsignedInt(zip, end + 16);
+        val entries = new HashMap<String, Entry>(count * 2);
+
+        for (int i = 0; i < count; i++) {
+            if (position + CENTRAL_SIZE > zip.limit() || zip.getInt((int) position) != CENTRAL_SIGNATURE) {
+                throw new ZipException("Invalid central directory entry.");
+            }
+
+            val offset = (int) position;
+            val nameLength = unsignedShort(zip, offset + 28);
+            val name = new byte[nameLength];
+
+            val nameBuffer = zip.duplicate();
+            nameBuffer.position(offset + CENTRAL_SIZE);
+            nameBuffer.get(name);
+
+            entries.put(
+                new String(name, StandardCharsets.UTF_8),
+                new Entry(
+                        unsignedShort(zip, offset + 10),
+                        unsignedInt(zip, offset + 20),
+                        unsignedInt(zip, offset + 24),
+                        unsignedInt(zip, offset + 42)
+                )
+            );
+
+            position += CENTRAL_SIZE
+                + nameLength
+                + unsignedShort(zip, offset + 30)
+                + unsignedShort(zip, offset + 32);
+        }
+
+        return new ZipIndex(zip, Collections.unmodifiableMap(entries));
+    }
+
+    private static int findEnd(@NonNull ByteBuffer zip) throws ZipException {
+        val lowest = Math.max(0, zip.limit() - END_SIZE - MAX_COMMENT_SIZE);
+
+        for (int position = zip.limit() - END_SIZE; position >= lowest; position--) {
+            if (zip.getInt(position) == END_SIGNATURE) {
+                return position;
+            }
+        }
+
+        throw new ZipException("Missing end of central directory.");
+    }
+
+    private static int unsignedShort(@NonNull ByteBuffer zip, int position) {
+        return zip.getShort(position) & 0xFFFF;
+    }
+
+    private static long unsignedInt(@NonNull ByteBuffer zip, int position) {
+        return zip.getInt(position) & 0xFFFFFFFFL;
+    }
+
+    Entry getEntry(@NonNull String name) {
+        return this.entries.get(name);
+    }
+
+    Collection<String> getNames() {
+        return this.entries.keySet();
+    }
+
+    /**
+     * Returns the raw data of the entry without copying it. The data is only usable as is if the entry is stored.
+     *
+     * @param entry an entry of this index
+     * @return a buffer containing exactly the entry's data
+     * @throws IOException if the local header of the entry is invalid
+     */
+    ByteBuffer slice(@NonNull Entry entry) throws IOException {
+        val start = this.dataOffset(entry);
+        val end = start + entry.getCompressedSize();
+
+        if (end > this.buffer.limit()) {
+            throw new ZipException("Entry exceeds the zip file.");
+        }
+
+        val slice = this.buffer.duplicate();
+        slice.position(start);
+        slice.limit((int) end);
+
+        return slice.slice();
+    }
+
+    /**
+     * @param entry an entry of this index
+     * @return the offset of the entry's data from the start of the zip file
+     * @throws IOException if the local header of the entry is invalid
+     */
+    int dataOffset(@NonNull Entry entry) throws IOException {
+        val header = (int) entry.getLocalHeaderOffset();
+
+        if (header + LOCAL_SIZE > this.buffer.limit() || this.buffer.getInt(header) != LOCAL_SIGNATURE) {
+            throw new ZipException("Invalid local header.");
+        }
+
+        return header + LOCAL_SIZE + unsignedShort(this.buffer, header + 26) + unsignedShort(this.buffer, header + 28);
+    }
+
+    /**
+     * Opens a stream of the entry's uncompressed data.
+     *
+     * @param entry an entry of this index
+     * @return the stream
+     * @throws IOException if the entry uses an unsupported compression method
+     */
+    InputStream open(@NonNull Entry entry) throws IOException {
+        val data = new ByteBufferInputStream(this.slice(entry));
+
+        switch (entry.getMethod()) {
+            case ZipEntry.STORED:
+                return data;
+            case ZipEntry.DEFLATED:
+                return new EntryInflaterInputStream(data);
+            default:
+                throw new ZipException("Unsupported compression method " + entry.getMethod() + ".");
+        }
+    }
+
+    @Value
+    static class Entry {
+        int method;
+        long compressedSize;
+        long size;
+        long localHeaderOffset;
+
+        boolean isStored() {
+            return this.method == ZipEntry.STORED;
+        }
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(@NonNull ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!this.buffer.hasRemaining()) {
+                return -1;
+            }
+
+            val read = Math.min(len, this.buffer.remaining());
+            this.buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public long skip(long n) {
+            val skipped = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+            this.buffer.position(this.buffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return this.buffer.remaining();
+        }
+    }
+
+    /**
+     * Inflates raw deflate data like {@link java.util.zip.ZipFile} does, which feeds the inflater a trailing dummy
+     * byte and releases it on close.
+     */
+    private static final class EntryInflaterInputStream extends InflaterInputStream {
+        private boolean eof;
+        private boolean closed;
+
+        private EntryInflaterInputStream(@NonNull InputStream input) {
+            super(input, new Inflater(true), BUFFER_SIZE);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (this.eof) {
+                throw new EOFException("Unexpected end of deflated entry.");
+            }
+
+            super.len = super.in.read(super.buf, 0, super.buf.length);
+
+            if (super.len == -1) {
+                super.buf[0] = 0;
+                super.len = 1;
+                this.eof = true;
+            }
+
+            super.inf.setInput(super.buf, 0, super.len);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!this.closed) {
+                this.closed = true;
+                super.inf.end();
+                super.close();
+            }
+        }
+    }
+}
@@ -17,6 +17,7 @@ dependencies {
     implementation("org.eclipse.aether:aether-transport-http:1.1.0");
     implementation("org.apache.maven:maven-core:3.8.3")
     implementation(project(":common"))
+    implementation(project(":core"))
 }
 
 gradlePlugin {
@@ -1,8 +1,15 @@
 package com.heretere.hdl.plugin;
 
+import com.heretere.hdl.plugin.constants.ConflictStrategy;
+
 import lombok.Data;
 
 @Data
 public class HDLExtension {
     private boolean bukkit;
+    private ConflictStrategy conflictStrategy = ConflictStrategy.NEAREST;
+    /**
+     * Embeds the resolved jars unmodified into the plugin jar, so the plugin never needs network access at runtime.
+     */
+    private boolean embedded;
 }
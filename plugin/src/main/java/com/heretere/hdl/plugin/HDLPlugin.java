@@ -1,13 +1,23 @@
 package com.heretere.hdl.plugin;
 
 import java.util.Objects;
+import java.util.stream.Collectors;
 
 import org.gradle.api.Plugin;
 import org.gradle.api.Project;
+import org.gradle.api.Task;
 import org.gradle.api.artifacts.Configuration;
-
+import org.gradle.api.artifacts.ProjectDependency;
+import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.SourceSet;
+import org.gradle.api.tasks.SourceSetContainer;
+import org.gradle.jvm.tasks.Jar;
+
+import com.heretere.hdl.common.constants.DefaultRepository;
+import com.heretere.hdl.plugin.resolution.DependencyResolutionService;
 import com.heretere.hdl.plugin.tasks.HDLGenerateDependencies;
-import com.heretere.hdl.plugin.tasks.HDLPackageRuntime;
+import com.heretere.hdl.plugin.tasks.EmbedLibraries;
 
 import lombok.NonNull;
 import lombok.val;
@@ -46,6 +56,92 @@ public class HDLPlugin implements Plugin<Project> {
         return hdlDependencyConfig;
     }
 
+    private Provider<DependencyResolutionService> registerResolutionService(Project target) {
+        return target.getGradle()
+            .getSharedServices()
+            .registerIfAbsent(
+                DependencyResolutionService.NAME,
+                DependencyResolutionService.class,
+                spec -> spec.getParameters()
+                    .getLocalRepository()
+                    .set(target.getRootProject().getLayout().getBuildDirectory().dir("hdl/.m2/repository"))
+            );
+    }
+
+    private void configureGenerateDependencies(
+            Project target,
+            HDLExtension extension,
+            Configuration hdlConfig,
+            HDLGenerateDependencies task
+    ) {
+        val resolutionService = this.registerResolutionService(target);
+
+        task.getResolutionService().set(resolutionService);
+        task.usesService(resolutionService);
+        task.getConflictStrategy().set(extension.getConflictStrategy());
+        task.getOutputFile().set(target.getLayout().getBuildDirectory().file("hdl/resources/hdl_dependencies.json"));
+        task.getEmbedded().set(extension.isEmbedded());
+        task.getLibraryDirectory().set(target.getLayout().getBuildDirectory().dir("hdl/libs"));
+
+        task.getCoordinates().set(target.provider(() -> {
+            val dependencies = hdlConfig.getAllDependencies()
+                .stream()
+                .filter(dependency -> dependency.getGroup() != null && dependency.getVersion() != null)
+                .collect(Collectors.toList());
+
+            for (val dependency : dependencies) {
+                assert !(dependency instanceof ProjectDependency) : "HDL doesn't support project dependencies.";
+            }
+
+            return dependencies.stream()
+                .map(dependency -> dependency.getGroup() + ":" + dependency.getName() + ":" + dependency.getVersion())
+                .collect(Collectors.toList());
+        }));
+
+        target.getRepositories()
+            .withType(MavenArtifactRepository.class)
+            .stream()
+            .filter(repo -> !repo.getName().equals(DefaultRepository.MAVEN_LOCAL.getId()))
+            .forEach(repo -> task.getRepositories().put(repo.getName(), repo.getUrl().toString()));
+
+        // The manifest gets its own resource directory, build/resources/main belongs to processResources.
+        target.getExtensions()
+            .getByType(SourceSetContainer.class)
+            .getByName(SourceSet.MAIN_SOURCE_SET_NAME)
+            .getResources()
+            .srcDir(target.files(task.getOutputFile().map(file -> file.getAsFile().getParentFile())).builtBy(task));
+    }
+
+    /**
+     * Adds the hdl runtime classes and, in embedded mode, the resolved jars to a jar task. Everything is wired at
+     * configuration time so the build works with the configuration cache.
+     */
+    private void configurePackaging(
+            Project target,
+            HDLExtension extension,
+            Configuration runtimeConfig,
+            HDLGenerateDependencies generateDependencies,
+            Task packageRuntime,
+            Jar jarTask
+    ) {
+        jarTask.dependsOn(packageRuntime);
+        jarTask.from(
+            target.provider(
+                () -> runtimeConfig.getFiles()
+                    .stream()
+                    .map(file -> file.isDirectory() ? file : target.zipTree(file))
+                    .collect(Collectors.toList())
+            )
+        );
+
+        if (extension.isEmbedded()) {
+            jarTask.getInputs()
+                .files(generateDependencies.getLibraryDirectory())
+                .withPropertyName("hdlLibraries");
+            jarTask.doLast(new EmbedLibraries(generateDependencies.getLibraryDirectory().get().getAsFile()));
+        }
+    }
+
     @Override
     public void apply(@NonNull Project target) {
         val extension = target.getExtensions().create("hdl", HDLExtension.class);
@@ -54,25 +150,33 @@ public class HDLPlugin implements Plugin<Project> {
         target.afterEvaluate(t -> {
             val runtimeConfig = this.addHDLDependency(target, extension);
             val generateDependencies = target.getTasks()
-                .create("hdlGenerateDependencies", HDLGenerateDependencies.class, hdlConfig);
-            val packageRuntime = target.getTasks()
-                .create("hdlPackageRuntime", HDLPackageRuntime.class, runtimeConfig);
+                .create("hdlGenerateDependencies", HDLGenerateDependencies.class);
+
+            this.configureGenerateDependencies(target, extension, hdlConfig, generateDependencies);
+
+            val packageRuntime = target.getTasks().create("hdlPackageRuntime");
 
             generateDependencies.setGroup("hdl");
             packageRuntime.setGroup("hdl");
+            packageRuntime.setDescription("Prepares everything the jar tasks package for hdl.");
 
             packageRuntime
                 .dependsOn(generateDependencies);
 
-            target.getTasks()
-                .getByName("jar")
-                .dependsOn(packageRuntime);
+            val jar = (Jar) target.getTasks().getByName("jar");
+            this.configurePackaging(target, extension, runtimeConfig, generateDependencies, packageRuntime, jar);
 
             val shadowJar = target.getTasks().findByName("shadowJar");
 
-            if (shadowJar != null) {
-                shadowJar
-                    .dependsOn(packageRuntime);
+            if (shadowJar instanceof Jar) {
+                this.configurePackaging(
+                    target,
+                    extension,
+                    runtimeConfig,
+                    generateDependencies,
+                    packageRuntime,
+                    (Jar) shadowJar
+                );
             }
         });
     }
@@ -0,0 +1,15 @@
+package com.heretere.hdl.plugin.constants;
+
+/**
+ * Decides which version wins when the combined dependency graph contains multiple versions of the same artifact.
+ */
+public enum ConflictStrategy {
+    /**
+     * Maven's default, the version closest to a root dependency wins.
+     */
+    NEAREST,
+    /**
+     * The highest version found anywhere in the graph wins.
+     */
+    HIGHEST
+}
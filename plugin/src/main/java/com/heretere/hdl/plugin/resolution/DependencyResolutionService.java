@@ -0,0 +1,146 @@
+package com.heretere.hdl.plugin.resolution;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
+import org.eclipse.aether.RepositorySystem;
+import org.eclipse.aether.RepositorySystemSession;
+import org.eclipse.aether.collection.CollectRequest;
+import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
+import org.eclipse.aether.graph.Dependency;
+import org.eclipse.aether.repository.LocalRepository;
+import org.eclipse.aether.repository.RemoteRepository;
+import org.eclipse.aether.resolution.ArtifactResult;
+import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.DependencyResolutionException;
+import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
+import org.eclipse.aether.spi.connector.transport.TransporterFactory;
+import org.eclipse.aether.transport.file.FileTransporterFactory;
+import org.eclipse.aether.transport.http.HttpTransporterFactory;
+import org.eclipse.aether.util.filter.ScopeDependencyFilter;
+import org.eclipse.aether.util.graph.transformer.ChainedDependencyGraphTransformer;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+import org.eclipse.aether.util.graph.transformer.JavaDependencyContextRefiner;
+import org.eclipse.aether.util.graph.transformer.JavaScopeDeriver;
+import org.eclipse.aether.util.graph.transformer.JavaScopeSelector;
+import org.eclipse.aether.util.graph.transformer.SimpleOptionalitySelector;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import com.heretere.hdl.plugin.constants.ConflictStrategy;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * Build wide Aether resolution shared by every {@link com.heretere.hdl.plugin.tasks.HDLGenerateDependencies} task.
+ * Keeps a single repository system, a single local artifact cache and an in-memory cache of resolved graphs so
+ * subprojects with the same hdl dependencies only resolve them once per build.
+ */
+public abstract class DependencyResolutionService implements BuildService<DependencyResolutionService.Params> {
+    public static final String NAME = "hdlDependencyResolution";
+
+    public interface Params extends BuildServiceParameters {
+        DirectoryProperty getLocalRepository();
+    }
+
+    private final RepositorySystem repositorySystem;
+    private final Map<String, CompletableFuture<List<ArtifactResult>>> resolvedGraphs;
+
+    public DependencyResolutionService() {
+        val locator = MavenRepositorySystemUtils.newServiceLocator();
+        locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
+        locator.addService(TransporterFactory.class, FileTransporterFactory.class);
+        locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
+
+        this.repositorySystem = locator.getService(RepositorySystem.class);
+        this.resolvedGraphs = new ConcurrentHashMap<>();
+    }
+
+    private RepositorySystemSession newSession(@NonNull ConflictStrategy conflictStrategy) {
+        val session = MavenRepositorySystemUtils.newSession();
+        val localRepository = new LocalRepository(this.getParameters().getLocalRepository().get().getAsFile());
+        session.setLocalRepositoryManager(this.repositorySystem.newLocalRepositoryManager(session, localRepository));
+
+        if (conflictStrategy == ConflictStrategy.HIGHEST) {
+            session.setDependencyGraphTransformer(
+                new ChainedDependencyGraphTransformer(
+                        new ConflictResolver(
+                                new HighestVersionSelector(),
+                                new JavaScopeSelector(),
+                                new SimpleOptionalitySelector(),
+                                new JavaScopeDeriver()
+                        ),
+                        new JavaDependencyContextRefiner()
+                )
+            );
+        }
+
+        return session;
+    }
+
+    /**
+     * Resolves all roots as a single graph so conflicting versions across roots are reduced to one version per
+     * artifact by the session's conflict resolver. Identical requests share the same result, concurrent identical
+     * requests wait for the first one instead of resolving again.
+     *
+     * @param repositories     the remote repositories to resolve from
+     * @param roots            the root dependencies
+     * @param conflictStrategy the version conflict strategy
+     * @return the resolved artifacts
+     * @throws DependencyResolutionException if the graph couldn't be resolved
+     */
+    public List<ArtifactResult> resolve(
+            @NonNull List<RemoteRepository> repositories,
+            @NonNull List<Dependency> roots,
+            @NonNull ConflictStrategy conflictStrategy
+    ) throws DependencyResolutionException {
+        val key = conflictStrategy
+            + "|" + repositories.stream()
+                .map(repository -> repository.getId() + "=" + repository.getUrl())
+                .collect(Collectors.joining(","))
+            + "|" + roots.stream()
+                .map(root -> root.getArtifact().toString())
+                .collect(Collectors.joining(","));
+
+        val future = new CompletableFuture<List<ArtifactResult>>();
+        val existing = this.resolvedGraphs.putIfAbsent(key, future);
+
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof DependencyResolutionException) {
+                    throw (DependencyResolutionException) e.getCause();
+                }
+
+                throw e;
+            }
+        }
+
+        try {
+            val collectRequest = new CollectRequest(roots, null, repositories);
+            val dependencyRequest = new DependencyRequest(
+                    collectRequest,
+                    new ScopeDependencyFilter("provided", "system", "test", "import")
+            );
+
+            val result = this.repositorySystem
+                .resolveDependencies(this.newSession(conflictStrategy), dependencyRequest)
+                .getArtifactResults();
+
+            future.complete(result);
+            return result;
+        } catch (DependencyResolutionException | RuntimeException e) {
+            this.resolvedGraphs.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.heretere.hdl.plugin.resolution;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.eclipse.aether.collection.UnsolvableVersionConflictException;
+import org.eclipse.aether.graph.DependencyFilter;
+import org.eclipse.aether.util.graph.transformer.ConflictResolver;
+import org.eclipse.aether.util.graph.visitor.PathRecordingDependencyVisitor;
+import org.eclipse.aether.version.VersionConstraint;
+
+import lombok.NonNull;
+import lombok.val;
+
+/**
+ * A {@link ConflictResolver.VersionSelector} that always picks the highest version of a conflicting artifact.
+ * Ties are broken by depth so the nearest declaration of the winning version is kept.
+ * <p>
+ * Like maven's nearest selector, only versions within every hard version range declared for the artifact are
+ * considered. If no version satisfies all of them the conflict is unsolvable.
+ */
+public final class HighestVersionSelector extends ConflictResolver.VersionSelector {
+    @Override
+    public void selectVersion(ConflictResolver.ConflictContext context) throws UnsolvableVersionConflictException {
+        final List<VersionConstraint> ranges = context.getItems()
+            .stream()
+            .map(item -> item.getNode().getVersionConstraint())
+            .filter(constraint -> constraint != null && constraint.getRange() != null)
+            .collect(Collectors.toList());
+
+        ConflictResolver.ConflictItem winner = null;
+
+        for (val item : context.getItems()) {
+            val version = item.getNode().getVersion();
+
+            if (!ranges.stream().allMatch(range -> range.containsVersion(version))) {
+                continue;
+            }
+
+            if (winner == null) {
+                winner = item;
+                continue;
+            }
+
+            val comparison = version.compareTo(winner.getNode().getVersion());
+
+            if (comparison > 0 || (comparison == 0 && item.getDepth() < winner.getDepth())) {
+                winner = item;
+            }
+        }
+
+        if (winner == null && !context.getItems().isEmpty()) {
+            throw newFailure(context);
+        }
+
+        context.setWinner(winner);
+    }
+
+    private static UnsolvableVersionConflictException newFailure(@NonNull ConflictResolver.ConflictContext context) {
+        final DependencyFilter filter = (node, parents) -> context.isIncluded(node);
+        val visitor = new PathRecordingDependencyVisitor(filter);
+        context.getRoot().accept(visitor);
+
+        return new UnsolvableVersionConflictException(visitor.getPaths());
+    }
+}
@@ -0,0 +1,116 @@
+package com.heretere.hdl.plugin.tasks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.gradle.api.Action;
+import org.gradle.api.Task;
+import org.gradle.jvm.tasks.Jar;
+
+import com.google.common.io.ByteStreams;
+import com.heretere.hdl.impl.zip.AlignedZipWriter;
+import com.heretere.hdl.impl.zip.EmbeddedArchive;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.val;
+
+/**
+ * Rewrites a finished jar with every library jar appended as an uncompressed, page aligned entry in
+ * {@link EmbeddedArchive#LIBRARY_DIRECTORY}. The jar task can't do this itself since it compresses every entry, while
+ * the runtime memory maps the nested jars and needs them stored.
+ */
+@RequiredArgsConstructor
+public class EmbedLibraries implements Action<Task> {
+    /**
+     * A file instead of a path so the action can be stored in the configuration cache.
+     */
+    @NonNull
+    private final File libraryDirectory;
+
+    @Override
+    public void execute(@NonNull Task task) {
+        val archive = ((Jar) task).getArchiveFile().get().getAsFile().toPath();
+        val temporary = archive.resolveSibling(archive.getFileName() + ".tmp");
+
+        try {
+            val libraries = this.libraries();
+
+            try (
+                    ZipFile zip = new ZipFile(archive.toFile());
+                    AlignedZipWriter output = new AlignedZipWriter(Files.newOutputStream(temporary))
+            ) {
+                val entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    val entry = entries.nextElement();
+
+                    if (!entry.getName().startsWith(EmbeddedArchive.LIBRARY_DIRECTORY)) {
+                        this.copy(zip, entry, output);
+                    }
+                }
+
+                for (val library : libraries) {
+                    output.putStored(
+                        EmbeddedArchive.LIBRARY_DIRECTORY + library.getFileName(),
+                        AlignedZipWriter.DOS_EPOCH,
+                        Files.readAllBytes(library)
+                    );
+                }
+            }
+
+            // Reads the jar back the way the runtime does, so a packaging bug fails the build instead of a server.
+            EmbeddedArchive.verify(temporary, libraries);
+
+            Files.move(temporary, archive, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to embed libraries into " + archive, e);
+        } finally {
+            try {
+                Files.deleteIfExists(temporary);
+            } catch (IOException ignored) {
+                // The next build overwrites it.
+            }
+        }
+    }
+
+    private void copy(@NonNull ZipFile zip, @NonNull ZipEntry entry, @NonNull AlignedZipWriter output)
+            throws IOException {
+        final byte[] data;
+        try (InputStream input = zip.getInputStream(entry)) {
+            data = ByteStreams.toByteArray(input);
+        }
+
+        if (entry.getMethod() == ZipEntry.STORED) {
+            output.putStored(entry.getName(), entry.getTime(), data);
+        } else {
+            output.putDeflated(entry.getName(), entry.getTime(), data);
+        }
+    }
+
+    private List<Path> libraries() throws IOException {
+        val directory = this.libraryDirectory.toPath();
+
+        if (!Files.isDirectory(directory)) {
+            return Collections.emptyList();
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            // Sorted so the jar stays reproducible.
+            return files
+                .filter(file -> file.getFileName().toString().endsWith(".jar"))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+}
@@ -3,156 +3,239 @@ package com.heretere.hdl.plugin.tasks;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import javax.inject.Inject;
-
-import org.apache.maven.repository.internal.MavenRepositorySystemUtils;
-import org.eclipse.aether.RepositorySystem;
-import org.eclipse.aether.RepositorySystemSession;
 import org.eclipse.aether.artifact.Artifact;
 import org.eclipse.aether.artifact.DefaultArtifact;
-import org.eclipse.aether.collection.CollectRequest;
-import org.eclipse.aether.connector.basic.BasicRepositoryConnectorFactory;
 import org.eclipse.aether.graph.Dependency;
-import org.eclipse.aether.repository.LocalRepository;
 import org.eclipse.aether.repository.RemoteRepository;
-import org.eclipse.aether.resolution.DependencyRequest;
+import org.eclipse.aether.resolution.ArtifactResult;
 import org.eclipse.aether.resolution.DependencyResolutionException;
-import org.eclipse.aether.spi.connector.RepositoryConnectorFactory;
-import org.eclipse.aether.spi.connector.transport.TransporterFactory;
-import org.eclipse.aether.transport.file.FileTransporterFactory;
-import org.eclipse.aether.transport.http.HttpTransporterFactory;
-import org.eclipse.aether.util.filter.ScopeDependencyFilter;
 import org.gradle.api.DefaultTask;
-import org.gradle.api.artifacts.Configuration;
-import org.gradle.api.artifacts.ProjectDependency;
-import org.gradle.api.artifacts.repositories.MavenArtifactRepository;
+import org.gradle.api.Task;
+import org.gradle.api.file.DirectoryProperty;
+import org.gradle.api.file.RegularFileProperty;
+import org.gradle.api.provider.ListProperty;
+import org.gradle.api.provider.MapProperty;
+import org.gradle.api.provider.Property;
+import org.gradle.api.specs.Spec;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
 import org.gradle.api.tasks.TaskAction;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.google.common.collect.Lists;
 import com.heretere.hdl.common.constants.DefaultRepository;
 import com.heretere.hdl.common.json.HDLConfig;
 import com.heretere.hdl.common.json.Repository;
 import com.heretere.hdl.common.json.ResolvedDependency;
+import com.heretere.hdl.impl.DependencyDownloader;
+import com.heretere.hdl.plugin.constants.ConflictStrategy;
+import com.heretere.hdl.plugin.resolution.DependencyResolutionService;
 
 import lombok.val;
 
-public class HDLGenerateDependencies extends DefaultTask {
-    private final Configuration hdlConfiguration;
-    private final Path tmpRepo;
-    private final List<RemoteRepository> repositories;
-    private final RepositorySystem repositorySystem;
-    private final HDLConfig.HDLConfigBuilder hdlConfigBuilder;
-
-    @Inject
-    public HDLGenerateDependencies(Configuration hdlConfiguration) {
-        this.hdlConfiguration = hdlConfiguration;
-        this.tmpRepo = super.getProject().getBuildDir().toPath().resolve("hdl").resolve(".m2").resolve("repository");
-        this.repositories = Lists.newArrayList();
-
-        val locator = MavenRepositorySystemUtils.newServiceLocator();
-        locator.addService(RepositoryConnectorFactory.class, BasicRepositoryConnectorFactory.class);
-        locator.addService(TransporterFactory.class, FileTransporterFactory.class);
-        locator.addService(TransporterFactory.class, HttpTransporterFactory.class);
-
-        this.repositorySystem = locator.getService(RepositorySystem.class);
-        this.hdlConfigBuilder = HDLConfig.builder();
-    }
+public abstract class HDLGenerateDependencies extends DefaultTask {
+    private static final String SNAPSHOT = "-SNAPSHOT";
 
-    private RepositorySystemSession newSession() {
-        val session = MavenRepositorySystemUtils.newSession();
-        val localRepository = new LocalRepository(this.tmpRepo.toFile());
-        session.setLocalRepositoryManager(this.repositorySystem.newLocalRepositoryManager(session, localRepository));
-        return session;
+    public HDLGenerateDependencies() {
+        // The same coordinates can resolve to a different graph if any of them is dynamic.
+        this.getOutputs().upToDateWhen(new FixedCoordinates());
     }
 
-    private void initRepos() {
-        this.repositories.clear();
+    /**
+     * @return the group:artifact:version coordinates of the root hdl dependencies
+     */
+    @Input
+    public abstract ListProperty<String> getCoordinates();
+
+    /**
+     * @return the maven repositories to resolve from, keyed by repository name
+     */
+    @Input
+    public abstract MapProperty<String, String> getRepositories();
+
+    @Input
+    public abstract Property<ConflictStrategy> getConflictStrategy();
+
+    @OutputFile
+    public abstract RegularFileProperty getOutputFile();
+
+    /**
+     * @return whether the resolved jars are copied to {@link #getLibraryDirectory()} to be embedded into the jar
+     */
+    @Input
+    public abstract Property<Boolean> getEmbedded();
+
+    /**
+     * @return the directory the jars to embed are copied to, including the ones hdl itself needs at runtime
+     */
+    @OutputDirectory
+    public abstract DirectoryProperty getLibraryDirectory();
+
+    @Internal
+    public abstract Property<DependencyResolutionService> getResolutionService();
+
+    /**
+     * @return whether the version can resolve to a different artifact over time, e.g. a range, {@code 1.+},
+     *     {@code LATEST} or a snapshot
+     */
+    private static boolean isDynamic(String coordinates) {
+        val version = new DefaultArtifact(coordinates).getVersion();
+
+        return version.endsWith(SNAPSHOT)
+            || version.contains("+")
+            || version.startsWith("[")
+            || version.startsWith("(")
+            || version.startsWith("latest.")
+            || "LATEST".equals(version)
+            || "RELEASE".equals(version);
+    }
 
-        this.getProject()
-            .getRepositories()
-            .stream()
-            .filter(MavenArtifactRepository.class::isInstance)
-            .filter(repo -> !repo.getName().equals(DefaultRepository.MAVEN_LOCAL.getId()))
-            .map(repo -> {
-                val mavenRepo = (MavenArtifactRepository) repo;
-                return new RemoteRepository.Builder(mavenRepo.getName(), "default", mavenRepo.getUrl().toString())
-                    .build();
-            })
-            .forEach(this.repositories::add);
+    private static String fileName(Artifact artifact) {
+        return artifact.getArtifactId() + "-" + artifact.getVersion() + ".jar";
     }
 
-    private void getAllDependencies(Artifact artifact) throws DependencyResolutionException {
-        val collectRequest = new CollectRequest(new Dependency(artifact, ""), this.repositories);
-        val dependencyRequest = new DependencyRequest(
-                collectRequest,
-                new ScopeDependencyFilter("provided", "system", "test", "import")
-        );
+    private void addArtifact(HDLConfig.HDLConfigBuilder hdlConfigBuilder, ArtifactResult ar) {
+        Artifact resolvedArtifact = ar.getArtifact();
+        RemoteRepository remoteRepo = (RemoteRepository) ar.getRepository();
 
-        val result = this.repositorySystem.resolveDependencies(this.newSession(), dependencyRequest);
-        result.getArtifactResults().forEach(ar -> {
-            Artifact resolvedArtifact = ar.getArtifact();
-            RemoteRepository remoteRepo = (RemoteRepository) ar.getRepository();
-
-            val url = remoteRepo.getUrl().endsWith("/") ? remoteRepo.getUrl() : (remoteRepo.getUrl() + "/");
-
-            val group = resolvedArtifact.getGroupId().replace(".", "/");
-            val artifactId = resolvedArtifact.getArtifactId();
-            val version = resolvedArtifact.getBaseVersion();
-            val versionExtension = resolvedArtifact.getVersion();
-
-            val jarName = resolvedArtifact.getArtifactId() + "-" + versionExtension + ".jar";
-            val relativeUrl = String.format("%s/%s/%s/%s", group, artifactId, version, jarName);
-
-            val defaultRepo = DefaultRepository.fromURLString(url);
-            final String repoId;
-
-            if (defaultRepo == null) {
-                repoId = remoteRepo.getId();
-                this.hdlConfigBuilder.repository(repoId, Repository.builder().url(url).build());
-            } else {
-                repoId = defaultRepo.getId();
-                this.hdlConfigBuilder.repository(
-                    repoId,
-                    defaultRepo.getRepository()
-                );
-            }
+        val url = remoteRepo.getUrl().endsWith("/") ? remoteRepo.getUrl() : (remoteRepo.getUrl() + "/");
+
+        val group = resolvedArtifact.getGroupId().replace(".", "/");
+        val artifactId = resolvedArtifact.getArtifactId();
+        val version = resolvedArtifact.getBaseVersion();
+
+        val jarName = fileName(resolvedArtifact);
+        val relativeUrl = String.format("%s/%s/%s/%s", group, artifactId, version, jarName);
+
+        val defaultRepo = DefaultRepository.fromURLString(url);
+        final String repoId;
 
-            this.hdlConfigBuilder.dependency(new ResolvedDependency(relativeUrl, repoId, jarName));
-        });
+        if (defaultRepo == null) {
+            repoId = remoteRepo.getId();
+            hdlConfigBuilder.repository(repoId, Repository.builder().url(url).build());
+        } else {
+            repoId = defaultRepo.getId();
+            hdlConfigBuilder.repository(
+                repoId,
+                defaultRepo.getRepository()
+            );
+        }
 
+        hdlConfigBuilder.dependency(
+            ResolvedDependency.builder()
+                .relativeUrl(relativeUrl)
+                .repositoryId(repoId)
+                .fileName(jarName)
+                .size(resolvedArtifact.getFile().length())
+                .build()
+        );
     }
 
     @TaskAction
     public void generateDependencies() throws IOException, DependencyResolutionException {
-        this.initRepos();
+        val repositories = this.getRepositories()
+            .get()
+            .entrySet()
+            .stream()
+            .map(repo -> new RemoteRepository.Builder(repo.getKey(), "default", repo.getValue()).build())
+            .collect(Collectors.toList());
 
-        val dependencies = this.hdlConfiguration.getAllDependencies()
+        val roots = this.getCoordinates()
+            .get()
             .stream()
-            .filter(dependency -> dependency.getGroup() != null && dependency.getVersion() != null)
-            .collect(Collectors.toSet());
+            .map(coordinates -> new Dependency(new DefaultArtifact(coordinates), ""))
+            .collect(Collectors.toList());
+
+        val hdlConfigBuilder = HDLConfig.builder();
+        final List<ArtifactResult> results = roots.isEmpty()
+            ? Collections.emptyList()
+            : this.getResolutionService().get().resolve(repositories, roots, this.getConflictStrategy().get());
 
-        for (val dependency : dependencies) {
-            assert !(dependency instanceof ProjectDependency) : "HDL doesn't support project dependencies.";
+        results.forEach(ar -> this.addArtifact(hdlConfigBuilder, ar));
+
+        this.copyLibraries(results);
+
+        ObjectMapper mapper = new ObjectMapper();
+        val resourcesFile = this.getOutputFile().get().getAsFile().toPath();
+        Files.createDirectories(resourcesFile.getParent());
+        mapper.writeValue(
+            resourcesFile.toFile(),
+            hdlConfigBuilder.build()
+        );
+    }
+
+    private void copyLibraries(List<ArtifactResult> results) throws IOException, DependencyResolutionException {
+        val directory = this.getLibraryDirectory().get().getAsFile().toPath();
+
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (val file : files.collect(Collectors.toList())) {
+                    Files.delete(file);
+                }
+            }
+        }
+
+        if (!this.getEmbedded().get()) {
+            return;
         }
 
-        for (val dependency : dependencies) {
-            this.getAllDependencies(
-                new DefaultArtifact(dependency.getGroup() + ":" + dependency.getName() + ":" + dependency.getVersion())
+        Files.createDirectories(directory);
+
+        val libraries = new ArrayList<>(results);
+        libraries.addAll(this.resolvePrivateDependencies());
+
+        for (val library : libraries) {
+            Files.copy(
+                library.getArtifact().getFile().toPath(),
+                directory.resolve(fileName(library.getArtifact())),
+                StandardCopyOption.REPLACE_EXISTING
             );
         }
+    }
 
-        ObjectMapper mapper = new ObjectMapper();
-        val resourcesDir = this.getProject().getBuildDir().toPath().resolve("resources/main");
-        val resourcesFile = resourcesDir.resolve("hdl_dependencies.json");
-        Files.createDirectories(resourcesDir);
-        Files.createFile(resourcesFile);
-        mapper.writeValue(
-            resourcesDir.resolve("hdl_dependencies.json").toFile(),
-            this.hdlConfigBuilder.build()
+    /**
+     * Resolves the jars hdl itself downloads at runtime, so embedded plugins don't have to download those either.
+     */
+    private List<ArtifactResult> resolvePrivateDependencies() throws DependencyResolutionException {
+        val central = DefaultRepository.MAVEN_CENTRAL;
+        val repositories = Collections.singletonList(
+            new RemoteRepository.Builder(central.getId(), "default", central.getRepository().getUrls().get(0)).build()
         );
+
+        val roots = DependencyDownloader.PRIVATE_DEPENDENCIES
+            .stream()
+            .map(dependency -> {
+                // group/path/artifact/version/artifact-version.jar
+                val parts = Arrays.asList(dependency.getRelativeUrl().split("/"));
+                val group = String.join(".", parts.subList(0, parts.size() - 3));
+                val coordinates = group + ":" + parts.get(parts.size() - 3) + ":" + parts.get(parts.size() - 2);
+
+                return new Dependency(new DefaultArtifact(coordinates), "");
+            })
+            .collect(Collectors.toList());
+
+        return this.getResolutionService().get().resolve(repositories, roots, ConflictStrategy.NEAREST);
+    }
+
+    /**
+     * A class instead of a lambda so the spec can be stored in the configuration cache.
+     */
+    private static final class FixedCoordinates implements Spec<Task> {
+        @Override
+        public boolean isSatisfiedBy(Task task) {
+            return ((HDLGenerateDependencies) task).getCoordinates()
+                .get()
+                .stream()
+                .noneMatch(HDLGenerateDependencies::isDynamic);
+        }
     }
 }
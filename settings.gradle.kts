@@ -4,3 +4,4 @@ include(":common")
 include(":plugin")
 include(":core")
 include(":bukkit")
+include(":cli")